@@ -1,8 +1,8 @@
 import io.netty.channel.Channel;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.ssl.SslContext;
-import io.netty.handler.ssl.SslContextBuilder;
-import io.netty.handler.ssl.util.SelfSignedCertificate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Mono;
@@ -11,6 +11,8 @@ import reactor.netty.ConnectionObserver;
 import reactor.netty.http.HttpProtocol;
 import reactor.netty.http.server.HttpServer;
 import reactor.netty.http.server.HttpServerResponse;
+import rntbd.Configs;
+import rntbd.RntbdTrace;
 
 import javax.net.ssl.SSLException;
 import java.net.SocketAddress;
@@ -22,21 +24,30 @@ public class EchoHttp11Server extends EchoServerBase {
 
     @Override
     public void Start(int port) throws CertificateException, SSLException {
-        SelfSignedCertificate ssc = new SelfSignedCertificate("localhost");
-        SslContext sslCtx = SslContextBuilder.forServer(ssc.certificate(), ssc.privateKey())
-                .build();
+        SecurityMode security = SecurityMode.parse(Configs.getHttp1Security(), "HTTP/1.1", false);
 
-        server = HttpServer.create()
+        HttpServer httpServer = HttpServer.create()
+                .runOn(ServerTransport.select().loopResources("http1", 1, 0))
                 .port(port)
-                .protocol(HttpProtocol.HTTP11)
-                .secure(spec -> spec.sslContext(sslCtx))
+                .protocol(HttpProtocol.HTTP11);
+
+        if (security == SecurityMode.TLS) {
+            SslContext sslCtx = ServerSsl.forTcp();
+            httpServer = httpServer.secure(spec -> spec.sslContext(sslCtx));
+        }
+
+        server = httpServer
                 .idleTimeout(Duration.ofMinutes(5))
                 .route(routes -> {
                     routes
                         .get("/hello",
                                 (request, response) ->  Utils.OKResponseWithJsonBody(response, Utils.testJsonPayload))
                         .get("/dbs/{dbname}",
-                                (request, response) ->  Utils.OKResponseWithJsonBody(response, Utils.testJsonPayload));
+                                (request, response) ->  Utils.OKResponseWithJsonBody(response, Utils.testJsonPayload))
+                        .get("/rntbd/trace",
+                                (request, response) -> response
+                                        .header(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.TEXT_PLAIN)
+                                        .sendString(Mono.fromSupplier(RntbdTrace::dump)));
                 })
                 .doOnChannelInit(new ChannelPipelineConfigurer() {
                     @Override
@@ -48,6 +59,6 @@ public class EchoHttp11Server extends EchoServerBase {
                 })
                 .bindNow();
 
-        logger.info("Http1 Server listening on port: {}", port);
+        logger.info("Http1 Server listening on port: {} security: {}", port, security);
     }
 }
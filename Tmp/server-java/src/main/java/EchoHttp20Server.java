@@ -1,8 +1,6 @@
 import io.netty.channel.Channel;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import io.netty.handler.codec.http2.Http2SecurityUtil;
-import io.netty.handler.ssl.*;
-import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.handler.ssl.SslContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Mono;
@@ -11,6 +9,7 @@ import reactor.netty.ConnectionObserver;
 import reactor.netty.DisposableServer;
 import reactor.netty.http.HttpProtocol;
 import reactor.netty.http.server.HttpServer;
+import rntbd.Configs;
 
 import javax.net.ssl.SSLException;
 import java.net.SocketAddress;
@@ -21,21 +20,21 @@ public class EchoHttp20Server extends EchoServerBase {
 
     @Override
     public void Start(int port) throws CertificateException, SSLException {
-        SelfSignedCertificate ssc = new SelfSignedCertificate();
-        SslContext sslCtx = SslContextBuilder.forServer(ssc.certificate(), ssc.privateKey())
-                .ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
-                .applicationProtocolConfig(
-                        new ApplicationProtocolConfig(ApplicationProtocolConfig.Protocol.ALPN,
-                                ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
-                                ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
-                                ApplicationProtocolNames.HTTP_2))
-                .build();
+        SecurityMode security = SecurityMode.parse(Configs.getHttp2Security(), "HTTP/2", true);
 
-        server = HttpServer.create()
+        HttpServer httpServer = HttpServer.create()
+                .runOn(ServerTransport.select().loopResources("http2", 1, 0))
                 .host("localhost")
-                .port(port)
-                .protocol(HttpProtocol.H2)
-                .secure(spec -> spec.sslContext(sslCtx))
+                .port(port);
+
+        if (security == SecurityMode.TLS) {
+            SslContext sslCtx = ServerSsl.forHttp2();
+            httpServer = httpServer.protocol(HttpProtocol.H2).secure(spec -> spec.sslContext(sslCtx));
+        } else {
+            httpServer = httpServer.protocol(HttpProtocol.H2C);
+        }
+
+        server = httpServer
 //                .http2Settings(settings -> settings.maxConcurrentStreams(5))
                 .route(routes -> {
                     routes.get("/dbs/{dbname}",
@@ -51,6 +50,6 @@ public class EchoHttp20Server extends EchoServerBase {
                 })
                 .bindNow();
 
-        logger.info("Http2 Server listening on port: {}", port);
+        logger.info("Http2 Server listening on port: {} security: {}", port, security);
     }
 }
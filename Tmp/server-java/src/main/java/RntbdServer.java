@@ -1,28 +1,38 @@
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.unix.UnixChannelOption;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.ssl.SslContext;
-import io.netty.handler.ssl.SslContextBuilder;
-import io.netty.handler.ssl.SslHandler;
-import io.netty.handler.ssl.util.SelfSignedCertificate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rntbd.*;
 
-import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 public class RntbdServer extends EchoServerBase {
     private final static Logger logger = LoggerFactory.getLogger(RntbdServer.class);
 
+    private final List<Channel> listeners = new ArrayList<>();
+    private EventLoopGroup parent;
+    private EventLoopGroup child;
+    private RntbdWriteAheadLog wal;
+
     @Override
     public void Start(int port) throws CertificateException, SSLException, ExecutionException, InterruptedException {
 //        SelfSignedCertificate ssc = new SelfSignedCertificate("localhost");
@@ -53,12 +63,21 @@ public class RntbdServer extends EchoServerBase {
 
     private void bootstrapNativeNettyStart(int port) throws CertificateException, SSLException, ExecutionException, InterruptedException {
         ServerBootstrap bootstrap = new ServerBootstrap();
-        NioEventLoopGroup parent = new NioEventLoopGroup();
-        NioEventLoopGroup child = new NioEventLoopGroup();
+        ServerTransport transport = ServerTransport.select();
+
+        // With SO_REUSEPORT the kernel load balances new connections across N listening sockets, each accepting on
+        // its own event loop, so a reconnect storm no longer queues up behind a single acceptor thread
+        int acceptors = Math.max(1, Configs.getAcceptors());
+        if (acceptors > 1 && !transport.supportsReusePort()) {
+            logger.warn("Transport {} does not support SO_REUSEPORT, binding a single acceptor", transport);
+            acceptors = 1;
+        }
+
+        parent = transport.newEventLoopGroup(acceptors, "rntbd-accept");
+        child = transport.newEventLoopGroup(0, "rntbd-io");
 
-        SelfSignedCertificate ssc = new SelfSignedCertificate("localhost");
-        SslContext sslContext = SslContextBuilder.forServer(ssc.certificate(), ssc.privateKey())
-                .build();
+        SecurityMode security = SecurityMode.parse(Configs.getRntbdSecurity(), "RNTBD", false);
+        SslContext sslContext = security == SecurityMode.TLS ? ServerSsl.forTcp() : null;
 
         LogLevel logLevel = LogLevel.WARN;
         if (logger.isTraceEnabled()) {
@@ -73,31 +92,134 @@ public class RntbdServer extends EchoServerBase {
 
         final LogLevel finalLogLevel = logLevel;
 
+        // Responses written while requests are being read are flushed together when the read completes, so a
+        // pipelining client gets one TLS record and one write per batch rather than per response. Delayed responses
+        // are already flushed once per latency tick.
+        final int maxFlushBatch = Configs.getMaxFlushBatch();
+
+        final String backend = Configs.getBackend();
+        final RntbdOperationRegistry operations = newOperationRegistry(backend, transport);
+
         bootstrap.group(parent, child)
-                .channel(NioServerSocketChannel.class)
+                .channel(transport.serverChannelClass())
                 .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     public void initChannel(SocketChannel channel) throws Exception {
 
-                        SSLEngine engine = sslContext.newEngine(channel.alloc());
-                        engine.setUseClientMode(false);
-
                         ChannelPipeline pipeline = channel.pipeline();
+                        if (sslContext != null) {
+                            pipeline.addLast(sslContext.newHandler(channel.alloc()));
+                        }
+                        if (maxFlushBatch > 0) {
+                            pipeline.addLast(new FlushConsolidationHandler(maxFlushBatch, false));
+                        }
                         pipeline.addLast(
-                                new SslHandler(engine),
                                 //new LoggingHandler(finalLogLevel),
-                                new RntbdRequestFrameInAdapter(),
                                 new RntbdCodec(),
-                                new EchoRntbdRequestProcessor()
+                                new EchoRntbdRequestProcessor(operations)
                         );
 
-                        logger.warn("[cid: 0x{}] created a new pipeline", channel.id());
+                        RntbdTrace.connected(channel);
                     }
                 })
                 .childOption(ChannelOption.SO_KEEPALIVE, true);
 
-        bootstrap.bind(port).get();
+        if (acceptors > 1) {
+            bootstrap.option(UnixChannelOption.SO_REUSEPORT, true);
+        }
+
+        // Each bind registers its server channel on the next parent event loop
+        for (int i = 0; i < acceptors; i++) {
+            Channel listener = bootstrap.bind(port).sync().channel();
+            listeners.add(listener);
+        }
+
+        logger.warn("RntbdServer listening on port: {} transport: {} acceptors: {} security: {} backend: {}", port, transport, acceptors, security, backend);
+    }
+
+    private RntbdOperationRegistry newOperationRegistry(String backend, ServerTransport transport) throws SSLException {
+        switch (backend.toLowerCase()) {
+            case "echo":
+                return EchoOperationHandlers.newRegistry();
+            case "memory":
+                return DocumentStoreOperationHandlers.newRegistry(new RntbdDocumentStore(
+                        Configs.getStorePartitions(),
+                        child,
+                        partition -> new RntbdDocumentStore.HeapTable()), newWriteAheadLog());
+            case "mapped":
+                Path directory = Paths.get(Configs.getStoreDirectory());
+                int segmentSize = Math.min(Configs.getStoreSegmentSizeInMB(), 1024) * 1024 * 1024;
+                return DocumentStoreOperationHandlers.newRegistry(new RntbdDocumentStore(
+                        Configs.getStorePartitions(),
+                        child,
+                        partition -> new RntbdMappedTable(directory, partition, segmentSize)), newWriteAheadLog());
+            case "proxy":
+                // Backend connections are opened on the event loops of the client connections, so they share their transport
+                SecurityMode proxySecurity = SecurityMode.parse(Configs.getProxySecurity(), "RNTBD proxy", false);
+                return new RntbdProxy(
+                        parseEndpoints(Configs.getProxyBackends()),
+                        Configs.getProxyConnections(),
+                        Configs.getProxyRequestTimeoutMillis(),
+                        transport.channelClass(),
+                        proxySecurity == SecurityMode.TLS ? ServerSsl.forProxy() : null).newRegistry();
+            default:
+                throw new IllegalArgumentException("unknown backend: " + backend);
+        }
+    }
+
+    private static List<InetSocketAddress> parseEndpoints(String value) {
+        List<InetSocketAddress> endpoints = new ArrayList<>();
+        for (String endpoint : value.split(",")) {
+            endpoint = endpoint.trim();
+            if (endpoint.isEmpty()) {
+                continue;
+            }
+            int colon = endpoint.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("expected host:port, not " + endpoint);
+            }
+            endpoints.add(new InetSocketAddress(endpoint.substring(0, colon), Integer.parseInt(endpoint.substring(colon + 1))));
+        }
+        return endpoints;
+    }
+
+    private RntbdWriteAheadLog newWriteAheadLog() {
+        String mode = Configs.getWal();
+        if (mode.equalsIgnoreCase("off")) {
+            return null;
+        }
+        try {
+            wal = new RntbdWriteAheadLog(
+                    Paths.get(Configs.getWalDirectory()),
+                    RntbdWriteAheadLog.Fsync.parse(mode),
+                    Configs.getWalGroupCommitMicros());
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+        return wal;
+    }
+
+    @Override
+    public void ShutdownNow() {
+        for (Channel listener : listeners) {
+            listener.close().syncUninterruptibly();
+        }
+
+        parent.shutdownGracefully();
+
+        // Before the event loops stop: committed writes are handed back to the loops that own their partitions, and
+        // writes arriving meanwhile fail with 507
+        if (wal != null) {
+            wal.close();
+        }
 
-        logger.warn("RntbdServer listening on port: {}", port);
+        child.shutdownGracefully().syncUninterruptibly();
+    }
+
+    @Override
+    public void BlockedWait() {
+        for (Channel listener : listeners) {
+            listener.closeFuture().syncUninterruptibly();
+        }
     }
 }
@@ -0,0 +1,48 @@
+/**
+ * Transport security of a listener.
+ * <p>
+ * Running one listener in plaintext next to another in TLS separates protocol cost from crypto cost, and plaintext
+ * matches deployments where TLS is terminated by a load balancer in front of the server.
+ */
+public enum SecurityMode {
+
+    /**
+     * TLS with the shared {@link ServerSsl} context.
+     */
+    TLS,
+
+    /**
+     * No TLS.
+     */
+    PLAINTEXT,
+
+    /**
+     * HTTP/2 over cleartext TCP with prior knowledge; HTTP/2 listeners only.
+     */
+    H2C;
+
+    /**
+     * Parses a mode name: {@code tls}, {@code plaintext} or {@code h2c}.
+     *
+     * @param name the mode name.
+     * @param listener the listener the mode applies to, used in error messages.
+     * @param allowH2c {@code true} if the listener speaks HTTP/2.
+     */
+    static SecurityMode parse(final String name, final String listener, final boolean allowH2c) {
+
+        final SecurityMode mode;
+
+        try {
+            mode = SecurityMode.valueOf(name.trim().toUpperCase());
+        } catch (final IllegalArgumentException error) {
+            throw new IllegalArgumentException("invalid security mode for " + listener + ": " + name, error);
+        }
+
+        if (mode == H2C && !allowH2c) {
+            throw new IllegalArgumentException("security mode h2c is only valid for HTTP/2, not " + listener);
+        }
+
+        // Cleartext HTTP/2 is h2c
+        return allowH2c && mode == PLAINTEXT ? H2C : mode;
+    }
+}
@@ -0,0 +1,319 @@
+import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslServerSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.netty.handler.ssl.ReferenceCountedOpenSslContext;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rntbd.Configs;
+
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSessionContext;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.SecureRandom;
+import java.security.cert.CertificateException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * TLS settings shared by all listeners.
+ * <p>
+ * Each kind of {@link SslContext} is built once, from one set of key material, and reused for every connection of
+ * every listener. The OpenSSL
+ * provider from {@code netty-tcnative-boringssl-static} is preferred to the JDK one. Session IDs are cached and
+ * session tickets enabled so that reconnecting clients resume sessions instead of running full handshakes.
+ */
+final class ServerSsl {
+
+    private final static Logger logger = LoggerFactory.getLogger(ServerSsl.class);
+
+    private static KeyMaterial keyMaterial;
+    private static OpenSslSessionTicketKey ticketKey;
+    private static SslContext tcp;
+    private static SslContext http2;
+    private static SslContext proxy;
+
+    private ServerSsl() {
+    }
+
+    /**
+     * Returns the context used by RNTBD and HTTP/1.1 listeners.
+     */
+    static synchronized SslContext forTcp() throws CertificateException, SSLException {
+        if (tcp == null) {
+            tcp = build(newBuilder(null));
+        }
+        return tcp;
+    }
+
+    /**
+     * Returns the context used by HTTP/2 listeners: it negotiates {@code h2} with ALPN and defaults to the HTTP/2
+     * cipher suites.
+     */
+    static synchronized SslContext forHttp2() throws CertificateException, SSLException {
+        if (http2 == null) {
+            http2 = build(newBuilder(Http2SecurityUtil.CIPHERS).applicationProtocolConfig(
+                    new ApplicationProtocolConfig(ApplicationProtocolConfig.Protocol.ALPN,
+                            ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                            ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                            ApplicationProtocolNames.HTTP_2)));
+        }
+        return http2;
+    }
+
+    /**
+     * Returns the client context used by the RNTBD reverse proxy to connect to its backends. Backends are other
+     * instances of this server with self-signed certificates, so their certificates are not verified.
+     */
+    static synchronized SslContext forProxy() throws SSLException {
+        if (proxy == null) {
+            proxy = SslContextBuilder.forClient()
+                    .sslProvider(provider())
+                    .trustManager(InsecureTrustManagerFactory.INSTANCE)
+                    .build();
+        }
+        return proxy;
+    }
+
+    static SslProvider provider() {
+        final String name = Configs.getSslProvider();
+
+        if ("auto".equalsIgnoreCase(name)) {
+            return OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
+        }
+
+        final SslProvider provider = SslProvider.valueOf(name.toUpperCase());
+
+        if (provider != SslProvider.JDK && !OpenSsl.isAvailable()) {
+            logger.warn("SSL provider {} is not available, falling back to JDK", provider, OpenSsl.unavailabilityCause());
+            return SslProvider.JDK;
+        }
+
+        return provider;
+    }
+
+    private static SslContextBuilder newBuilder(final List<String> defaultCiphers) throws CertificateException {
+
+        if (keyMaterial == null) {
+            keyMaterial = KeyMaterial.load();
+        }
+
+        final SslContextBuilder builder = SslContextBuilder.forServer(keyMaterial.certificate, keyMaterial.privateKey)
+                .sslProvider(provider())
+                .sessionCacheSize(Configs.getTlsSessionCacheSize())
+                .sessionTimeout(Configs.getTlsSessionTimeoutInSeconds());
+
+        final List<String> ciphers = split(Configs.getTlsCiphers());
+
+        if (!ciphers.isEmpty()) {
+            builder.ciphers(ciphers, SupportedCipherSuiteFilter.INSTANCE);
+        } else if (defaultCiphers != null) {
+            builder.ciphers(defaultCiphers, SupportedCipherSuiteFilter.INSTANCE);
+        }
+
+        final List<String> protocols = split(Configs.getTlsProtocols());
+
+        if (!protocols.isEmpty()) {
+            builder.protocols(protocols);
+        }
+
+        return builder;
+    }
+
+    private static SslContext build(final SslContextBuilder builder) throws SSLException {
+
+        final SslContext context = builder.build();
+        final SSLSessionContext sessionContext = context.sessionContext();
+
+        // Both contexts share one ticket key so that a ticket issued by one listener is accepted by all of them. The
+        // JDK provider issues tickets on its own (JDK 13+, jdk.tls.server.enableSessionTicketExtension).
+        if (Configs.isTlsSessionTickets() && sessionContext instanceof OpenSslServerSessionContext) {
+            if (ticketKey == null) {
+                ticketKey = newTicketKey();
+            }
+            ((OpenSslServerSessionContext) sessionContext).setTicketKeys(ticketKey);
+        }
+
+        logger.warn("SslContext provider: {} ciphers: {} session tickets: {}",
+                context instanceof ReferenceCountedOpenSslContext ? "OpenSSL" : "JDK",
+                context.cipherSuites().size(),
+                Configs.isTlsSessionTickets());
+
+        return context;
+    }
+
+    private static OpenSslSessionTicketKey newTicketKey() {
+        final SecureRandom random = new SecureRandom();
+        final byte[] name = new byte[OpenSslSessionTicketKey.NAME_SIZE];
+        final byte[] hmacKey = new byte[OpenSslSessionTicketKey.HMAC_KEY_SIZE];
+        final byte[] aesKey = new byte[OpenSslSessionTicketKey.AES_KEY_SIZE];
+        random.nextBytes(name);
+        random.nextBytes(hmacKey);
+        random.nextBytes(aesKey);
+        return new OpenSslSessionTicketKey(name, hmacKey, aesKey);
+    }
+
+    private static List<String> split(final String value) {
+        return value.isEmpty() ? Arrays.asList() : Arrays.asList(value.split("\\s*,\\s*"));
+    }
+
+    // region Types
+
+    /**
+     * PEM certificate chain and private key files.
+     * <p>
+     * The files named by {@link Configs#getTlsCertificate()} and {@link Configs#getTlsPrivateKey()} are used when
+     * both are set. Otherwise a self-signed certificate is generated on first start and cached in
+     * {@link Configs#getTlsKeyCacheDirectory()}, so later starts skip RSA key generation.
+     * <p>
+     * A cached key is only used if the directory and files are owned by the current user and the key is readable by
+     * that user alone; otherwise anyone able to plant a key pair there would know the key the server uses. The
+     * directory is created {@code rwx------}. Ownership and permissions are not checked on file systems without
+     * POSIX attributes.
+     */
+    private static final class KeyMaterial {
+
+        private static final String CERTIFICATE_FILE = "server.crt";
+        private static final String PRIVATE_KEY_FILE = "server.key";
+
+        private static final Set<PosixFilePermission> PRIVATE_DIRECTORY = PosixFilePermissions.fromString("rwx------");
+        private static final Set<PosixFilePermission> PRIVATE_FILE = PosixFilePermissions.fromString("rw-------");
+        private static final boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+        final File certificate;
+        final File privateKey;
+
+        private KeyMaterial(final File certificate, final File privateKey) {
+            this.certificate = certificate;
+            this.privateKey = privateKey;
+        }
+
+        static KeyMaterial load() throws CertificateException {
+
+            final String certificate = Configs.getTlsCertificate();
+            final String privateKey = Configs.getTlsPrivateKey();
+
+            if (!certificate.isEmpty() || !privateKey.isEmpty()) {
+                if (certificate.isEmpty() || privateKey.isEmpty()) {
+                    throw new IllegalArgumentException("expected both a TLS certificate and a private key file");
+                }
+                logger.warn("Using TLS key material from {} and {}", certificate, privateKey);
+                return new KeyMaterial(new File(certificate), new File(privateKey));
+            }
+
+            final Path directory = Paths.get(Configs.getTlsKeyCacheDirectory());
+            final Path cachedCertificate = directory.resolve(CERTIFICATE_FILE);
+            final Path cachedPrivateKey = directory.resolve(PRIVATE_KEY_FILE);
+
+            if (Files.isReadable(cachedCertificate) && Files.isReadable(cachedPrivateKey)) {
+                try {
+                    if (isPrivate(directory, null) && isPrivate(cachedCertificate, null) && isPrivate(cachedPrivateKey, PRIVATE_FILE)) {
+                        logger.warn("Using cached TLS key material from {}", directory);
+                        return new KeyMaterial(cachedCertificate.toFile(), cachedPrivateKey.toFile());
+                    }
+                    logger.warn("Ignoring cached TLS key material in {}: not private to the current user", directory);
+                } catch (final IOException error) {
+                    logger.warn("Ignoring cached TLS key material in {}: {}", directory, error.toString());
+                }
+            }
+
+            final SelfSignedCertificate generated = new SelfSignedCertificate("localhost");
+
+            try {
+                createPrivateDirectory(directory);
+                copy(generated.privateKey().toPath(), cachedPrivateKey, true);
+                copy(generated.certificate().toPath(), cachedCertificate, false);
+                generated.delete();
+                logger.warn("Generated TLS key material cached in {}", directory);
+                return new KeyMaterial(cachedCertificate.toFile(), cachedPrivateKey.toFile());
+            } catch (final IOException | UnsupportedOperationException error) {
+                // Not cached: the next start generates a key again
+                logger.warn("Failed to cache TLS key material in {}: {}", directory, error.toString());
+                return new KeyMaterial(generated.certificate(), generated.privateKey());
+            }
+        }
+
+        /**
+         * Creates {@code directory} and its missing parents {@code rwx------}, or restricts an existing directory to
+         * {@code rwx------} if it is owned by the current user.
+         *
+         * @throws IOException if {@code directory} cannot be created or is owned by another user.
+         */
+        private static void createPrivateDirectory(final Path directory) throws IOException {
+
+            if (!posix) {
+                Files.createDirectories(directory);
+                return;
+            }
+
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PRIVATE_DIRECTORY));
+
+            if (!isPrivate(directory, null)) {
+                throw new IOException(directory + " is not owned by the current user");
+            }
+
+            Files.setPosixFilePermissions(directory, PRIVATE_DIRECTORY);
+        }
+
+        /**
+         * Returns {@code true} if {@code path} is owned by the current user and, if {@code permissions} is not
+         * {@code null}, has exactly those permissions; a directory or a file must also not be a symbolic link.
+         * Always {@code true} on file systems without POSIX attributes.
+         */
+        private static boolean isPrivate(final Path path, final Set<PosixFilePermission> permissions) throws IOException {
+
+            if (!posix) {
+                return true;
+            }
+
+            final PosixFileAttributes attributes = Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            final UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService()
+                    .lookupPrincipalByName(System.getProperty("user.name"));
+
+            return !attributes.isSymbolicLink()
+                    && attributes.owner().equals(user)
+                    && (permissions == null || attributes.permissions().equals(permissions));
+        }
+
+        /**
+         * Copies {@code source} next to {@code target} and moves it into place, so that a concurrent start never
+         * reads a partial file. The certificate is written last: its presence implies that the key is complete.
+         */
+        private static void copy(final Path source, final Path target, final boolean secret) throws IOException {
+
+            final Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+
+            try {
+                if (secret && posix) {
+                    Files.setPosixFilePermissions(temporary, PRIVATE_FILE);
+                }
+                Files.write(temporary, Files.readAllBytes(source));  // keeps the permissions of temporary
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    // endregion
+}
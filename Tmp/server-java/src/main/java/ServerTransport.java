@@ -0,0 +1,256 @@
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.netty.resources.LoopResources;
+import rntbd.Configs;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Socket transport used by all listeners: io_uring or epoll when the native library loads, NIO otherwise.
+ * <p>
+ * io_uring lives in the netty incubator and is not a dependency of this project. It is bound reflectively so that
+ * dropping {@code netty-incubator-transport-native-io_uring} on the class path is enough to enable it.
+ */
+public enum ServerTransport {
+
+    IO_URING {
+        @Override
+        boolean isAvailable() {
+            return IoUring.AVAILABLE;
+        }
+
+        @Override
+        boolean supportsReusePort() {
+            return true;
+        }
+
+        @Override
+        EventLoopGroup newEventLoopGroup(final int threads, final ThreadFactory threadFactory) {
+            return IoUring.newEventLoopGroup(threads, threadFactory);
+        }
+
+        @Override
+        Class<? extends ServerSocketChannel> serverChannelClass() {
+            return IoUring.serverChannelClass;
+        }
+
+        @Override
+        Class<? extends SocketChannel> channelClass() {
+            return IoUring.channelClass;
+        }
+    },
+
+    EPOLL {
+        @Override
+        boolean isAvailable() {
+            return Epoll.isAvailable();
+        }
+
+        @Override
+        boolean supportsReusePort() {
+            return true;
+        }
+
+        @Override
+        EventLoopGroup newEventLoopGroup(final int threads, final ThreadFactory threadFactory) {
+            return new EpollEventLoopGroup(threads, threadFactory);
+        }
+
+        @Override
+        Class<? extends ServerSocketChannel> serverChannelClass() {
+            return EpollServerSocketChannel.class;
+        }
+
+        @Override
+        Class<? extends SocketChannel> channelClass() {
+            return EpollSocketChannel.class;
+        }
+    },
+
+    NIO {
+        @Override
+        boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        boolean supportsReusePort() {
+            return false;
+        }
+
+        @Override
+        EventLoopGroup newEventLoopGroup(final int threads, final ThreadFactory threadFactory) {
+            return new NioEventLoopGroup(threads, threadFactory);
+        }
+
+        @Override
+        Class<? extends ServerSocketChannel> serverChannelClass() {
+            return NioServerSocketChannel.class;
+        }
+
+        @Override
+        Class<? extends SocketChannel> channelClass() {
+            return NioSocketChannel.class;
+        }
+    };
+
+    private final static Logger logger = LoggerFactory.getLogger(ServerTransport.class);
+
+    abstract boolean isAvailable();
+
+    /**
+     * Returns {@code true} if several listening sockets can share one port via {@code SO_REUSEPORT}.
+     */
+    abstract boolean supportsReusePort();
+
+    abstract EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory);
+
+    abstract Class<? extends ServerSocketChannel> serverChannelClass();
+
+    abstract Class<? extends SocketChannel> channelClass();
+
+    EventLoopGroup newEventLoopGroup(final int threads, final String poolName) {
+        return this.newEventLoopGroup(threads, new DefaultThreadFactory(poolName));
+    }
+
+    /**
+     * Returns the transport named by {@link Configs#getTransport()}, or the best available one for {@code auto}.
+     * <p>
+     * A transport that was asked for explicitly but cannot be loaded falls back to the next best one.
+     */
+    static ServerTransport select() {
+        final String name = Configs.getTransport();
+        final boolean auto = "auto".equalsIgnoreCase(name);
+        final ServerTransport requested = auto ? IO_URING : ServerTransport.valueOf(name.toUpperCase());
+        final ServerTransport[] candidates = ServerTransport.values();
+
+        for (int i = requested.ordinal(); i < candidates.length; i++) {
+            if (candidates[i].isAvailable()) {
+                if (!auto && candidates[i] != requested) {
+                    logger.warn("Transport {} is not available, falling back to {}", requested, candidates[i]);
+                }
+                return candidates[i];
+            }
+        }
+
+        return NIO;
+    }
+
+    /**
+     * Adapts this transport to reactor-netty so the HTTP listeners run on the same kind of event loops.
+     *
+     * @param poolName thread name prefix.
+     * @param selectThreads number of acceptor threads.
+     * @param workerThreads number of I/O threads, {@code 0} for the netty default.
+     */
+    LoopResources loopResources(final String poolName, final int selectThreads, final int workerThreads) {
+        final ServerTransport transport = this;
+        final EventLoopGroup select = this.newEventLoopGroup(selectThreads, poolName + "-select");
+        final EventLoopGroup workers = this.newEventLoopGroup(workerThreads, poolName + "-worker");
+
+        return new LoopResources() {
+            @Override
+            public EventLoopGroup onServer(final boolean useNative) {
+                return workers;
+            }
+
+            @Override
+            public EventLoopGroup onServerSelect(final boolean useNative) {
+                return select;
+            }
+
+            @Override
+            public EventLoopGroup onClient(final boolean useNative) {
+                return workers;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public <CHANNEL extends Channel> CHANNEL onChannel(final Class<CHANNEL> channelType, final EventLoopGroup group) {
+                try {
+                    return (CHANNEL) this.onChannelClass(channelType, group).getDeclaredConstructor().newInstance();
+                } catch (final ReflectiveOperationException error) {
+                    throw new IllegalStateException(error);
+                }
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public <CHANNEL extends Channel> Class<? extends CHANNEL> onChannelClass(final Class<CHANNEL> channelType, final EventLoopGroup group) {
+                if (channelType.equals(ServerSocketChannel.class)) {
+                    return (Class<? extends CHANNEL>) transport.serverChannelClass();
+                }
+                if (channelType.equals(SocketChannel.class)) {
+                    return (Class<? extends CHANNEL>) transport.channelClass();
+                }
+                return LoopResources.super.onChannelClass(channelType, group);
+            }
+
+            @Override
+            public Mono<Void> disposeLater(final Duration quietPeriod, final Duration timeout) {
+                return Mono.fromRunnable(() -> {
+                    select.shutdownGracefully();
+                    workers.shutdownGracefully();
+                });
+            }
+        };
+    }
+
+    // region Types
+
+    private static final class IoUring {
+
+        private static final String PACKAGE = "io.netty.incubator.channel.uring.";
+
+        static final boolean AVAILABLE;
+        static final Class<? extends ServerSocketChannel> serverChannelClass;
+        static final Class<? extends SocketChannel> channelClass;
+        private static final Class<? extends EventLoopGroup> eventLoopGroupClass;
+
+        static {
+            boolean available = false;
+            Class<? extends ServerSocketChannel> server = null;
+            Class<? extends SocketChannel> channel = null;
+            Class<? extends EventLoopGroup> group = null;
+
+            try {
+                final ClassLoader loader = ServerTransport.class.getClassLoader();
+                available = (boolean) Class.forName(PACKAGE + "IOUring", true, loader).getMethod("isAvailable").invoke(null);
+                server = Class.forName(PACKAGE + "IOUringServerSocketChannel", false, loader).asSubclass(ServerSocketChannel.class);
+                channel = Class.forName(PACKAGE + "IOUringSocketChannel", false, loader).asSubclass(SocketChannel.class);
+                group = Class.forName(PACKAGE + "IOUringEventLoopGroup", false, loader).asSubclass(EventLoopGroup.class);
+            } catch (final ReflectiveOperationException | LinkageError error) {
+                available = false;
+            }
+
+            AVAILABLE = available;
+            serverChannelClass = server;
+            channelClass = channel;
+            eventLoopGroupClass = group;
+        }
+
+        static EventLoopGroup newEventLoopGroup(final int threads, final ThreadFactory threadFactory) {
+            try {
+                return eventLoopGroupClass.getConstructor(int.class, ThreadFactory.class).newInstance(threads, threadFactory);
+            } catch (final ReflectiveOperationException error) {
+                throw new IllegalStateException("failed to create io_uring event loop group", error);
+            }
+        }
+    }
+
+    // endregion
+}
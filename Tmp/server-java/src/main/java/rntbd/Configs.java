@@ -0,0 +1,260 @@
+package rntbd;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Paths;
+
+/**
+ * Server wide settings, read once from JVM system properties (-Dname=value).
+ */
+public final class Configs {
+    private final static Logger logger = LoggerFactory.getLogger(Configs.class);
+
+    // Native transport: auto | io_uring | epoll | nio
+    private static final String TRANSPORT = "rntbd.server.transport";
+    private static final String DEFAULT_TRANSPORT = "auto";
+
+    // Number of SO_REUSEPORT listening sockets (one per acceptor event loop) bound to the RNTBD port
+    private static final String ACCEPTORS = "rntbd.server.acceptors";
+    private static final int DEFAULT_ACCEPTORS = 1;
+
+    // Reject requests that are missing a required header instead of only logging them
+    private static final String STRICT_REQUIRED_HEADERS = "rntbd.server.strictRequiredHeaders";
+    private static final boolean DEFAULT_STRICT_REQUIRED_HEADERS = false;
+
+    // Latency injected before each RNTBD response; see RntbdLatencyDistribution for the syntax
+    private static final String LATENCY = "rntbd.server.latency";
+    private static final String DEFAULT_LATENCY = "uniform:0,5";
+
+    // Resolution of the latency timing wheel
+    private static final String LATENCY_TICK_MICROS = "rntbd.server.latencyTickMicros";
+    private static final int DEFAULT_LATENCY_TICK_MICROS = 1000;
+
+    // Most flushes coalesced into one while a read is in progress; 0 flushes every response on its own
+    private static final String MAX_FLUSH_BATCH = "rntbd.server.maxFlushBatch";
+    private static final int DEFAULT_MAX_FLUSH_BATCH = 256;
+
+    // TLS provider used by all listeners: auto | openssl | openssl_refcnt | jdk
+    private static final String SSL_PROVIDER = "rntbd.server.sslProvider";
+    private static final String DEFAULT_SSL_PROVIDER = "auto";
+
+    // Comma separated TLS protocols and cipher suites; empty for the provider defaults
+    private static final String TLS_PROTOCOLS = "rntbd.server.tlsProtocols";
+    private static final String DEFAULT_TLS_PROTOCOLS = "";
+    private static final String TLS_CIPHERS = "rntbd.server.tlsCiphers";
+    private static final String DEFAULT_TLS_CIPHERS = "";
+
+    // TLS session resumption: session ID cache and session tickets
+    private static final String TLS_SESSION_CACHE_SIZE = "rntbd.server.tlsSessionCacheSize";
+    private static final int DEFAULT_TLS_SESSION_CACHE_SIZE = 20480;
+    private static final String TLS_SESSION_TIMEOUT_IN_SECONDS = "rntbd.server.tlsSessionTimeoutInSeconds";
+    private static final int DEFAULT_TLS_SESSION_TIMEOUT_IN_SECONDS = 3600;
+    private static final String TLS_SESSION_TICKETS = "rntbd.server.tlsSessionTickets";
+    private static final boolean DEFAULT_TLS_SESSION_TICKETS = true;
+
+    // Security mode of each listener: tls | plaintext, and h2c for HTTP/2
+    private static final String RNTBD_SECURITY = "rntbd.server.rntbdSecurity";
+    private static final String HTTP1_SECURITY = "rntbd.server.http1Security";
+    private static final String HTTP2_SECURITY = "rntbd.server.http2Security";
+    private static final String DEFAULT_SECURITY = "tls";
+
+    // PEM certificate chain and private key; when unset a self-signed certificate is generated once and cached in a
+    // directory private to the user
+    private static final String TLS_CERTIFICATE = "rntbd.server.tlsCertificate";
+    private static final String TLS_PRIVATE_KEY = "rntbd.server.tlsPrivateKey";
+    private static final String TLS_KEY_CACHE_DIRECTORY = "rntbd.server.tlsKeyCacheDirectory";
+    private static final String DEFAULT_TLS_KEY_CACHE_DIRECTORY =
+            Paths.get(System.getProperty("user.home"), ".rntbd-server", "tls").toString();
+
+    // Operation handlers of the RNTBD listener: echo | memory | mapped (RntbdDocumentStore, 0 partitions for one per
+    // event loop); mapped keeps documents in segment files under storeDirectory; proxy forwards to proxyBackends
+    private static final String BACKEND = "rntbd.server.backend";
+    private static final String DEFAULT_BACKEND = "echo";
+    private static final String STORE_PARTITIONS = "rntbd.server.storePartitions";
+    private static final int DEFAULT_STORE_PARTITIONS = 0;
+    private static final String STORE_DIRECTORY = "rntbd.server.storeDirectory";
+    private static final String DEFAULT_STORE_DIRECTORY =
+            Paths.get(System.getProperty("java.io.tmpdir"), "rntbd-server-store").toString();
+    private static final String STORE_SEGMENT_SIZE_IN_MB = "rntbd.server.storeSegmentSizeInMB";
+    private static final int DEFAULT_STORE_SEGMENT_SIZE_IN_MB = 64;
+
+    // Reverse proxy: comma-separated host:port backends, multiplexed connections per backend and event loop,
+    // transport security of those connections (tls | plaintext), and how long a forwarded request may wait for its
+    // response before it fails with 503 (0: forever)
+    private static final String PROXY_BACKENDS = "rntbd.server.proxyBackends";
+    private static final String DEFAULT_PROXY_BACKENDS = "";
+    private static final String PROXY_CONNECTIONS = "rntbd.server.proxyConnections";
+    private static final int DEFAULT_PROXY_CONNECTIONS = 1;
+    private static final String PROXY_SECURITY = "rntbd.server.proxySecurity";
+    private static final String DEFAULT_PROXY_SECURITY = "tls";
+    private static final String PROXY_REQUEST_TIMEOUT_MILLIS = "rntbd.server.proxyRequestTimeoutMillis";
+    private static final int DEFAULT_PROXY_REQUEST_TIMEOUT_MILLIS = 5_000;
+
+    // Write-ahead log of the memory and mapped backends: off | none | batch | write (fsync never, per group commit or
+    // per write); writes are answered once committed, after waiting up to walGroupCommitMicros for more writes
+    private static final String WAL = "rntbd.server.wal";
+    private static final String DEFAULT_WAL = "off";
+    private static final String WAL_DIRECTORY = "rntbd.server.walDirectory";
+    private static final String DEFAULT_WAL_DIRECTORY =
+            Paths.get(System.getProperty("java.io.tmpdir"), "rntbd-server-wal").toString();
+    private static final String WAL_GROUP_COMMIT_MICROS = "rntbd.server.walGroupCommitMicros";
+    private static final int DEFAULT_WAL_GROUP_COMMIT_MICROS = 0;
+
+    // Request trace: one in traceSampleRate requests is recorded, 0 disables; ring size per event loop in records
+    private static final String TRACE_SAMPLE_RATE = "rntbd.server.traceSampleRate";
+    private static final int DEFAULT_TRACE_SAMPLE_RATE = 64;
+    private static final String TRACE_BUFFER_SIZE = "rntbd.server.traceBufferSize";
+    private static final int DEFAULT_TRACE_BUFFER_SIZE = 4096;
+
+    private Configs() {
+    }
+
+    public static String getTransport() {
+        return getJVMConfigAsString(TRANSPORT, DEFAULT_TRANSPORT);
+    }
+
+    public static int getAcceptors() {
+        return getJVMConfigAsInt(ACCEPTORS, DEFAULT_ACCEPTORS);
+    }
+
+    public static boolean isStrictRequiredHeaders() {
+        return getJVMConfigAsBoolean(STRICT_REQUIRED_HEADERS, DEFAULT_STRICT_REQUIRED_HEADERS);
+    }
+
+    public static String getLatency() {
+        return getJVMConfigAsString(LATENCY, DEFAULT_LATENCY);
+    }
+
+    public static int getLatencyTickMicros() {
+        return getJVMConfigAsInt(LATENCY_TICK_MICROS, DEFAULT_LATENCY_TICK_MICROS);
+    }
+
+    public static int getMaxFlushBatch() {
+        return getJVMConfigAsInt(MAX_FLUSH_BATCH, DEFAULT_MAX_FLUSH_BATCH);
+    }
+
+    public static String getSslProvider() {
+        return getJVMConfigAsString(SSL_PROVIDER, DEFAULT_SSL_PROVIDER);
+    }
+
+    public static String getTlsProtocols() {
+        return getJVMConfigAsString(TLS_PROTOCOLS, DEFAULT_TLS_PROTOCOLS);
+    }
+
+    public static String getTlsCiphers() {
+        return getJVMConfigAsString(TLS_CIPHERS, DEFAULT_TLS_CIPHERS);
+    }
+
+    public static int getTlsSessionCacheSize() {
+        return getJVMConfigAsInt(TLS_SESSION_CACHE_SIZE, DEFAULT_TLS_SESSION_CACHE_SIZE);
+    }
+
+    public static int getTlsSessionTimeoutInSeconds() {
+        return getJVMConfigAsInt(TLS_SESSION_TIMEOUT_IN_SECONDS, DEFAULT_TLS_SESSION_TIMEOUT_IN_SECONDS);
+    }
+
+    public static boolean isTlsSessionTickets() {
+        return getJVMConfigAsBoolean(TLS_SESSION_TICKETS, DEFAULT_TLS_SESSION_TICKETS);
+    }
+
+    public static String getRntbdSecurity() {
+        return getJVMConfigAsString(RNTBD_SECURITY, DEFAULT_SECURITY);
+    }
+
+    public static String getHttp1Security() {
+        return getJVMConfigAsString(HTTP1_SECURITY, DEFAULT_SECURITY);
+    }
+
+    public static String getHttp2Security() {
+        return getJVMConfigAsString(HTTP2_SECURITY, DEFAULT_SECURITY);
+    }
+
+    public static String getTlsCertificate() {
+        return getJVMConfigAsString(TLS_CERTIFICATE, "");
+    }
+
+    public static String getTlsPrivateKey() {
+        return getJVMConfigAsString(TLS_PRIVATE_KEY, "");
+    }
+
+    public static String getTlsKeyCacheDirectory() {
+        return getJVMConfigAsString(TLS_KEY_CACHE_DIRECTORY, DEFAULT_TLS_KEY_CACHE_DIRECTORY);
+    }
+
+    public static String getBackend() {
+        return getJVMConfigAsString(BACKEND, DEFAULT_BACKEND);
+    }
+
+    public static int getStorePartitions() {
+        return getJVMConfigAsInt(STORE_PARTITIONS, DEFAULT_STORE_PARTITIONS);
+    }
+
+    public static String getStoreDirectory() {
+        return getJVMConfigAsString(STORE_DIRECTORY, DEFAULT_STORE_DIRECTORY);
+    }
+
+    public static int getStoreSegmentSizeInMB() {
+        return getJVMConfigAsInt(STORE_SEGMENT_SIZE_IN_MB, DEFAULT_STORE_SEGMENT_SIZE_IN_MB);
+    }
+
+    public static String getProxyBackends() {
+        return getJVMConfigAsString(PROXY_BACKENDS, DEFAULT_PROXY_BACKENDS);
+    }
+
+    public static int getProxyConnections() {
+        return getJVMConfigAsInt(PROXY_CONNECTIONS, DEFAULT_PROXY_CONNECTIONS);
+    }
+
+    public static String getProxySecurity() {
+        return getJVMConfigAsString(PROXY_SECURITY, DEFAULT_PROXY_SECURITY);
+    }
+
+    public static int getProxyRequestTimeoutMillis() {
+        return getJVMConfigAsInt(PROXY_REQUEST_TIMEOUT_MILLIS, DEFAULT_PROXY_REQUEST_TIMEOUT_MILLIS);
+    }
+
+    public static String getWal() {
+        return getJVMConfigAsString(WAL, DEFAULT_WAL);
+    }
+
+    public static String getWalDirectory() {
+        return getJVMConfigAsString(WAL_DIRECTORY, DEFAULT_WAL_DIRECTORY);
+    }
+
+    public static int getWalGroupCommitMicros() {
+        return getJVMConfigAsInt(WAL_GROUP_COMMIT_MICROS, DEFAULT_WAL_GROUP_COMMIT_MICROS);
+    }
+
+    public static int getTraceSampleRate() {
+        return getJVMConfigAsInt(TRACE_SAMPLE_RATE, DEFAULT_TRACE_SAMPLE_RATE);
+    }
+
+    public static int getTraceBufferSize() {
+        return getJVMConfigAsInt(TRACE_BUFFER_SIZE, DEFAULT_TRACE_BUFFER_SIZE);
+    }
+
+    private static String getJVMConfigAsString(final String propName, final String defaultValue) {
+        final String value = System.getProperty(propName);
+        return value == null || value.isEmpty() ? defaultValue : value.trim();
+    }
+
+    private static int getJVMConfigAsInt(final String propName, final int defaultValue) {
+        final String value = System.getProperty(propName);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (final NumberFormatException error) {
+            logger.error("Invalid value {} for {}, using default {}", value, propName, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static boolean getJVMConfigAsBoolean(final String propName, final boolean defaultValue) {
+        final String value = System.getProperty(propName);
+        return value == null || value.isEmpty() ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+}
@@ -0,0 +1,418 @@
+package rntbd;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.ReferenceCountUtil;
+import rntbd.RntbdConstants.RntbdOperationType;
+import rntbd.RntbdConstants.RntbdRequestHeader;
+import rntbd.RntbdConstants.RntbdResourceType;
+import rntbd.RntbdDocumentStore.Document;
+import rntbd.RntbdDocumentStore.Partition;
+import rntbd.RntbdDocumentStore.Write;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Handlers that serve document reads and writes from an {@link RntbdDocumentStore}.
+ * <p>
+ * A document is addressed by the {@code DatabaseName}, {@code CollectionName} and {@code DocumentName} request
+ * headers, or else by its {@code ResourceId}. A create or upsert without a document name takes it from the {@code id}
+ * property of the body. The {@code PartitionKey} header, when present, picks the partition. The {@code Match} header
+ * is {@code If-None-Match} on reads and {@code If-Match} on writes, as in the service.
+ * <p>
+ * Responses carry the document ETag, the LSN of the document and of its partition, the partition key range ID and a
+ * session token. Queries and feeds are still served by {@link EchoOperationHandlers}.
+ * <p>
+ * Requests are parsed on the event loop that received them. The operation then runs on the event loop that owns the
+ * document partition, and the response is built and written back on the receiving event loop.
+ * <p>
+ * With a {@link RntbdWriteAheadLog}, a successful write is answered only once the log has committed it, and the
+ * {@code LSN}, {@code GlobalCommittedLSN} and session token of responses advance with commits. Reads may see writes
+ * that are applied but not yet committed.
+ */
+public final class DocumentStoreOperationHandlers {
+
+    // region Fields
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private static final double READ_CHARGE = 1.0;
+    private static final double WRITE_CHARGE = 5.0;
+
+    private final RntbdDocumentStore store;
+    private final RntbdWriteAheadLog wal;
+
+    // endregion
+
+    private DocumentStoreOperationHandlers(final RntbdDocumentStore store, final RntbdWriteAheadLog wal) {
+        this.store = store;
+        this.wal = wal;
+    }
+
+    // region Methods
+
+    /**
+     * Returns a new registry with handlers backed by {@code store}; unregistered operations fail with status 500.
+     *
+     * @param store the document store.
+     * @param wal the log that writes are committed to before they are answered, or {@code null} to answer them at once.
+     */
+    public static RntbdOperationRegistry newRegistry(final RntbdDocumentStore store, final RntbdWriteAheadLog wal) {
+
+        final DocumentStoreOperationHandlers handlers = new DocumentStoreOperationHandlers(store, wal);
+
+        return new RntbdOperationRegistry(EchoOperationHandlers::internalServerError)
+                .register(RntbdResourceType.Connection, RntbdOperationType.Connection, EchoOperationHandlers::connect)
+                .register(RntbdResourceType.Document, RntbdOperationType.Read, handlers::handle)
+                .register(RntbdResourceType.Document, RntbdOperationType.Create, handlers::handle)
+                .register(RntbdResourceType.Document, RntbdOperationType.Upsert, handlers::handle)
+                .register(RntbdResourceType.Document, RntbdOperationType.Replace, handlers::handle)
+                .register(RntbdResourceType.Document, RntbdOperationType.Delete, handlers::handle)
+                .register(RntbdResourceType.Document, RntbdOperationType.Query, EchoOperationHandlers::feed)
+                .register(RntbdResourceType.Document, RntbdOperationType.SqlQuery, EchoOperationHandlers::feed)
+                .register(RntbdResourceType.Document, RntbdOperationType.ReadFeed, EchoOperationHandlers::feed);
+    }
+
+    /**
+     * Parses {@code request} on the event loop that received it and hands the operation over to the owner of its
+     * partition.
+     */
+    private void handle(final ChannelHandlerContext context, final RntbdRequest request) {
+
+        final Operation operation;
+
+        try {
+            operation = this.newOperation(context, request);
+        } finally {
+            ReferenceCountUtil.release(request);
+        }
+
+        final Partition partition = operation.partition;
+
+        if (partition == null || partition.owner().inEventLoop()) {
+            operation.run();
+        } else {
+            partition.owner().execute(operation);
+        }
+    }
+
+    private Operation newOperation(final ChannelHandlerContext context, final RntbdRequest request) {
+
+        final int type = request.operationTypeInt;
+        final boolean hasBody = type != RntbdOperationType.Read.id() && type != RntbdOperationType.Delete.id();
+        final ByteBuf payload = request.getPayload();
+
+        if (hasBody && !payload.isReadable()) {
+            return Operation.failed(context, request, 400);
+        }
+
+        final byte[] body = hasBody ? ByteBufUtil.getBytes(payload) : null;
+        final String key = documentKey(request, body);
+
+        if (key == null) {
+            return Operation.failed(context, request, 400);
+        }
+
+        final String partitionKey = request.getString(RntbdRequestHeader.PartitionKey);
+        final Partition partition = this.store.partition(partitionKey == null ? key : partitionKey);
+
+        return new Operation(context, request, partition, key, body, request.getString(RntbdRequestHeader.Match), this.wal);
+    }
+
+    /**
+     * Returns a response with the headers of a document operation and the document body, if any.
+     *
+     * @param lsn the LSN of the write, or the committed LSN of the partition for reads and failed writes.
+     * @param globalCommittedLsn the committed LSN of the partition.
+     */
+    private static IRntbdResponse respond(
+            final RntbdRequest request,
+            final int status,
+            final Partition partition,
+            final Document document,
+            final long lsn,
+            final long globalCommittedLsn,
+            final double requestCharge) {
+
+        final boolean payloadPresent = document != null && status != 304;
+
+        final RntbdResponseHeaders headers = RntbdResponseHeaders.newInstance(payloadPresent)
+                .transportRequestId(request.transportRequestId)
+                .requestCharge(requestCharge);
+
+        if (partition != null) {
+            headers.lsn(lsn)
+                    .localLsn(lsn)
+                    .globalCommittedLsn(globalCommittedLsn)
+                    .partitionKeyRangeId(partition.rangeId())
+                    .sessionToken(partition.sessionToken(lsn));
+        }
+
+        if (document != null) {
+            headers.eTag(document.eTag).itemLsn(document.lsn).itemLocalLsn(document.lsn);
+        }
+
+        final ByteBuf content = payloadPresent ? document.body.retainedDuplicate() : Unpooled.EMPTY_BUFFER;
+        return RntbdResponse.newInstance(request.activityId, status, headers, content);
+    }
+
+    /**
+     * Returns the key of the document addressed by {@code request}, or {@code null} if it names no document.
+     *
+     * @param body the request body, used to find the {@code id} of a document to create or upsert; {@code null} if
+     * none.
+     */
+    private static String documentKey(final RntbdRequest request, final byte[] body) {
+
+        final String database = request.getString(RntbdRequestHeader.DatabaseName);
+        final String collection = request.getString(RntbdRequestHeader.CollectionName);
+
+        if (database != null && collection != null) {
+
+            String document = request.getString(RntbdRequestHeader.DocumentName);
+
+            if (document == null && body != null) {
+                document = readId(body);
+            }
+
+            return document == null ? null : database + '/' + collection + '/' + document;
+        }
+
+        final byte[] resourceId = request.getBytes(RntbdRequestHeader.ResourceId);
+        return resourceId == null || resourceId.length == 0 ? null : Base64.getEncoder().encodeToString(resourceId);
+    }
+
+    /**
+     * Returns the top-level {@code id} property of a JSON document, or {@code null} if it has none or is malformed.
+     */
+    private static String readId(final byte[] body) {
+
+        try (final JsonParser parser = jsonFactory.createParser(body)) {
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+
+            for (JsonToken token = parser.nextToken(); token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+                final String name = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if ("id".equals(name)) {
+                    return value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                }
+                parser.skipChildren();
+            }
+
+            return null;
+
+        } catch (final IOException error) {
+            return null;
+        }
+    }
+
+    // endregion
+
+    // region Types
+
+    /**
+     * A document operation that runs on the owner of its partition and is then answered on the event loop of its
+     * connection.
+     * <p>
+     * One instance is the task queued to the owner, the write-ahead log entry and the task queued back, so a hop
+     * allocates nothing more. The request is released before the first hop: the operation carries what it needs.
+     */
+    private static final class Operation implements Runnable, RntbdWriteAheadLog.Entry {
+
+        private final ChannelHandlerContext context;
+        private final RntbdRequest request;
+        private final Partition partition;
+        private final String key;
+        private final byte[] body;
+        private final String ifMatch;
+        private final RntbdWriteAheadLog wal;
+
+        // Set on the owner
+        private State state = State.EXECUTE;
+        private boolean written;  // a create, upsert, replace or delete that changed the partition
+        private int status;
+        private Document document;
+        private long lsn;
+        private long committedLsn;
+
+        // Set on the log thread
+        private IOException error;
+
+        Operation(
+                final ChannelHandlerContext context,
+                final RntbdRequest request,
+                final Partition partition,
+                final String key,
+                final byte[] body,
+                final String ifMatch,
+                final RntbdWriteAheadLog wal) {
+
+            this.context = context;
+            this.request = request;
+            this.partition = partition;
+            this.key = key;
+            this.body = body;
+            this.ifMatch = ifMatch;
+            this.wal = wal;
+        }
+
+        /**
+         * Returns an operation that is answered with {@code status} without running on any partition.
+         */
+        static Operation failed(final ChannelHandlerContext context, final RntbdRequest request, final int status) {
+            final Operation operation = new Operation(context, request, null, null, null, null, null);
+            operation.state = State.RESPOND;
+            operation.status = status;
+            return operation;
+        }
+
+        @Override
+        public void run() {
+
+            switch (this.state) {
+
+                case EXECUTE:
+                    this.execute();
+                    if (this.wal != null && this.written) {
+                        this.state = State.COMMIT;
+                        this.wal.append(this);
+                        return;
+                    }
+                    this.commit();
+                    break;
+
+                case COMMIT:
+                    this.commit();
+                    break;
+
+                case RESPOND:
+                    this.respond();
+                    return;
+            }
+
+            this.state = State.RESPOND;
+
+            if (this.context.executor().inEventLoop()) {
+                this.respond();
+            } else {
+                this.context.executor().execute(this);
+            }
+        }
+
+        @Override
+        public ByteBuffer record() {
+            return RntbdWriteAheadLog.newRecord(
+                    this.partition.id(),
+                    this.lsn,
+                    this.request.operationTypeInt,
+                    this.key,
+                    this.status == 204 ? null : this.body);
+        }
+
+        @Override
+        public void committed(final IOException error) {
+
+            this.error = error;
+
+            try {
+                this.partition.owner().execute(this);
+            } catch (final RejectedExecutionException rejected) {
+                // The owner has shut down, and with it the connection this would be answered on: drop the response
+                // rather than the log thread
+            }
+        }
+
+        private void execute() {
+
+            final int type = this.request.operationTypeInt;
+
+            if (type == RntbdOperationType.Read.id()) {
+                this.read();
+                return;
+            }
+
+            final Write write;
+
+            if (type == RntbdOperationType.Create.id()) {
+                write = this.partition.create(this.key, this.body);
+            } else if (type == RntbdOperationType.Upsert.id()) {
+                write = this.partition.upsert(this.key, this.body, this.ifMatch);
+            } else if (type == RntbdOperationType.Replace.id()) {
+                write = this.partition.replace(this.key, this.body, this.ifMatch);
+            } else {
+                write = this.partition.delete(this.key, this.ifMatch);
+            }
+
+            this.written = write.status == 200 || write.status == 201 || write.status == 204;
+            this.status = write.status;
+            this.document = write.status == 204 ? null : write.document;  // a delete returns no content
+            this.lsn = write.lsn;
+        }
+
+        /**
+         * Advances the committed LSN of the partition past a successful write, and records it for the response.
+         * <p>
+         * A write the log failed to commit stays applied, as there is no rollback, but is answered with 507.
+         */
+        private void commit() {
+
+            if (this.partition == null) {
+                return;
+            }
+
+            if (this.error != null) {
+                this.status = 507;
+                this.document = null;
+            } else if (this.written) {
+                this.partition.commit(this.lsn);
+            }
+
+            this.committedLsn = this.partition.lsn();
+        }
+
+        private void read() {
+
+            this.document = this.partition.read(this.key);
+            this.lsn = this.partition.lsn();
+
+            if (this.document == null) {
+                this.status = 404;
+            } else if (this.document.eTag.equals(this.ifMatch)) {
+                this.status = 304;  // Match is If-None-Match on reads
+            } else {
+                this.status = 200;
+            }
+        }
+
+        private void respond() {
+
+            final double requestCharge = this.request.operationTypeInt == RntbdOperationType.Read.id() ? READ_CHARGE : WRITE_CHARGE;
+
+            RntbdOperationHandler.respond(this.context, this.request, DocumentStoreOperationHandlers.respond(
+                    this.request,
+                    this.status,
+                    this.partition,
+                    this.document,
+                    this.status == 507 ? this.committedLsn : this.lsn,
+                    this.committedLsn,
+                    requestCharge));
+        }
+
+        private enum State {
+            EXECUTE, COMMIT, RESPOND
+        }
+    }
+
+    // endregion
+}
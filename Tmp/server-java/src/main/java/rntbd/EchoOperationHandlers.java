@@ -0,0 +1,117 @@
+package rntbd;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import rntbd.RntbdConstants.RntbdOperationType;
+import rntbd.RntbdConstants.RntbdResourceType;
+
+import java.util.function.Consumer;
+
+/**
+ * Stateless handlers that answer document operations with canned or echoed payloads.
+ * <p>
+ * Reads return {@link Utils#testJsonPayloadBuffer}, queries and feeds return {@link Utils#testJsonFeedPayloadBuffer},
+ * and writes echo the request payload back without copying it. Status codes and headers follow those of the service.
+ */
+public final class EchoOperationHandlers {
+
+    private final static RntbdContext.Template contextTemplate = new RntbdContext.Template(new RntbdContext(
+            RntbdUUID.EMPTY,
+            HttpResponseStatus.OK,
+            "",
+            120L,
+            0,
+            25L,
+            "RntbdMockServer",
+            "1.0"));
+
+    // Headers shared by every response of a kind; encoded once into an RntbdResponseTemplate under the kind's id
+    private final static Consumer<RntbdResponseHeaders> readHeaders = headers -> headers.requestCharge(1.0);
+    private final static Consumer<RntbdResponseHeaders> writeHeaders = headers -> headers.requestCharge(5.0);
+    private final static Consumer<RntbdResponseHeaders> feedHeaders = headers -> headers.requestCharge(2.0).itemCount(1);
+    private final static Consumer<RntbdResponseHeaders> errorHeaders = headers -> headers.requestCharge(1.0);
+
+    private final static int READ = 0, WRITE = 1, FEED = 2, ERROR = 3;
+
+    private EchoOperationHandlers() {
+    }
+
+    /**
+     * Returns a new registry with the echo handlers; unregistered operations fail with status 500.
+     */
+    public static RntbdOperationRegistry newRegistry() {
+        return new RntbdOperationRegistry(EchoOperationHandlers::internalServerError)
+                .register(RntbdResourceType.Connection, RntbdOperationType.Connection, EchoOperationHandlers::connect)
+                .register(RntbdResourceType.Document, RntbdOperationType.Read, EchoOperationHandlers::read)
+                .register(RntbdResourceType.Document, RntbdOperationType.Create, request -> write(request, 201))
+                .register(RntbdResourceType.Document, RntbdOperationType.Upsert, request -> write(request, 200))
+                .register(RntbdResourceType.Document, RntbdOperationType.Replace, request -> write(request, 200))
+                .register(RntbdResourceType.Document, RntbdOperationType.Delete, EchoOperationHandlers::delete)
+                .register(RntbdResourceType.Document, RntbdOperationType.Query, EchoOperationHandlers::feed)
+                .register(RntbdResourceType.Document, RntbdOperationType.SqlQuery, EchoOperationHandlers::feed)
+                .register(RntbdResourceType.Document, RntbdOperationType.ReadFeed, EchoOperationHandlers::feed);
+    }
+
+    /**
+     * Returns a response with the given status and no payload, for operations that fail or return no content.
+     */
+    private static IRntbdResponse respond(
+            final RntbdRequest request,
+            final int status,
+            final int kind,
+            final Consumer<RntbdResponseHeaders> headers) {
+
+        return RntbdResponseTemplate.get(kind, request.resourceTypeInt, request.operationTypeInt, status, false, headers)
+                .newResponse(request.activityId, request.transportRequestId, Unpooled.EMPTY_BUFFER);
+    }
+
+    /**
+     * Returns a response with the given status and payload; the response takes ownership of {@code payload}.
+     */
+    private static IRntbdResponse respond(
+            final RntbdRequest request,
+            final int status,
+            final int kind,
+            final Consumer<RntbdResponseHeaders> headers,
+            final ByteBuf payload) {
+
+        return RntbdResponseTemplate.get(kind, request.resourceTypeInt, request.operationTypeInt, status, true, headers)
+                .newResponse(request.activityId, request.transportRequestId, payload);
+    }
+
+    static IRntbdResponse connect(final RntbdRequest request) {
+        return contextTemplate.newResponse(request.activityId);
+    }
+
+    private static IRntbdResponse read(final RntbdRequest request) {
+        return respond(request, 200, READ, readHeaders, Utils.testJsonPayloadBuffer.retainedDuplicate());
+    }
+
+    private static IRntbdResponse write(final RntbdRequest request, final int status) {
+        final ByteBuf payload = request.getPayload();
+        return payload.isReadable()
+                ? respond(request, status, WRITE, writeHeaders, payload.retainedSlice())
+                : badRequest(request);
+    }
+
+    private static IRntbdResponse delete(final RntbdRequest request) {
+        return respond(request, 204, WRITE, writeHeaders);
+    }
+
+    static IRntbdResponse feed(final RntbdRequest request) {
+        return respond(request, 200, FEED, feedHeaders, Utils.testJsonFeedPayloadBuffer.retainedDuplicate());
+    }
+
+    static IRntbdResponse badRequest(final RntbdRequest request) {
+        return respond(request, 400, ERROR, errorHeaders);
+    }
+
+    static IRntbdResponse internalServerError(final RntbdRequest request) {
+        return respond(request, 500, ERROR, errorHeaders);
+    }
+
+    static IRntbdResponse serviceUnavailable(final RntbdRequest request) {
+        return respond(request, 503, ERROR, errorHeaders);
+    }
+}
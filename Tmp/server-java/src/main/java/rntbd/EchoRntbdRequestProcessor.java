@@ -1,27 +1,27 @@
 package rntbd;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
-import io.netty.handler.codec.http.HttpResponseStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.Charset;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Random;
-import java.util.concurrent.TimeUnit;
-
 /**
  * Processing incoming requests.
  */
 public final class EchoRntbdRequestProcessor extends ChannelDuplexHandler {
     private final static Logger logger = LoggerFactory.getLogger(EchoRntbdRequestProcessor.class);
-    private final static Random randomLatency = new Random();
+
+    private final static RntbdOperationRegistry echoOperations = EchoOperationHandlers.newRegistry();
+
+    private final RntbdOperationRegistry operations;
 
     public EchoRntbdRequestProcessor() {
+        this(echoOperations);
+    }
+
+    public EchoRntbdRequestProcessor(final RntbdOperationRegistry operations) {
         super();
+        this.operations = operations;
     }
 
     @Override
@@ -32,59 +32,10 @@ public final class EchoRntbdRequestProcessor extends ChannelDuplexHandler {
             throw new Exception(String.format("Unexpeted message [msg-id: {}] type: {}", hashCode, message.getClass().getName()));
         }
 
-        IRntbdResponse response = null;
-        RntbdRequest request = (RntbdRequest) message;
-        logger.info("[cid: 0x{} msg-id: {}] channelRead msg: {}", context.channel().id(), message.hashCode(), message);
-
-        if (request.resourceTypeInt == 0 && request.operationTypeInt == 0) { // connection-Connect
-            response = new RntbdContext(
-                    request.activityId,
-                    HttpResponseStatus.OK,
-                    "",
-                    120L,
-                    0,
-                    25L,
-                    "RntbdMockServer",
-                    "1.0");
-        } else if(request.resourceTypeInt == 3 && request.operationTypeInt == 3) { // Document-Read
-            ByteBuf payload = Unpooled.copiedBuffer(Utils.testJsonPayload, Charset.defaultCharset());
-
-            Map<String, String> map = new HashMap<>();
-            map.put(HttpConstants.HttpHeaders.CONTENT_TYPE, "application/json");
-            map.put(HttpConstants.HttpHeaders.REQUEST_CHARGE, "1.0");
-            map.put(HttpConstants.HttpHeaders.CONTENT_LENGTH, Integer.toString(payload.writerIndex()));
-            map.put(HttpConstants.HttpHeaders.TRANSPORT_REQUEST_ID, String.valueOf(request.transportRequestId));
-
-            response = new RntbdResponse(
-                    request.activityId,
-                    200,
-                    map,
-                    payload);
-        }
-
-        if (response == null) {
-            Map<String, String> map = new HashMap<>();
-            map.put(HttpConstants.HttpHeaders.CONTENT_TYPE, "application/json");
-            map.put(HttpConstants.HttpHeaders.REQUEST_CHARGE, "1.0");
-            map.put(HttpConstants.HttpHeaders.TRANSPORT_REQUEST_ID, String.valueOf(request.transportRequestId));
-
-            response = new RntbdResponse(
-                    request.activityId,
-                    500,
-                    map,
-                    Unpooled.EMPTY_BUFFER);
-        }
-
-        logger.info("[cid: 0x{} msg-id: {}] created new msg: {}", context.channel().id(), message.hashCode(), response.hashCode());
+        final RntbdRequest request = (RntbdRequest) message;
 
-        // ReferenceCountUtil.safeRelease(message);
         context.fireChannelReadComplete();
-        final IRntbdResponse finalResponse = response;
-
-        int nextRandonLatency = randomLatency.nextInt(5);
-        context.executor().schedule(() -> context.writeAndFlush(finalResponse), nextRandonLatency, TimeUnit.MILLISECONDS);
-
-        logger.debug("Randomlatency {}", nextRandonLatency);
+        this.operations.lookup(request.resourceTypeInt, request.operationTypeInt).handle(context, request);
     }
 
     @Override
@@ -99,7 +50,9 @@ public final class EchoRntbdRequestProcessor extends ChannelDuplexHandler {
     @Override
     public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
 
-        logger.info("[cid: 0x{}] userEventTriggered evt-id: {} evt: {}", ctx.channel().id(), evt.hashCode(), evt.toString());
+        if (logger.isDebugEnabled()) {
+            logger.debug("[cid: 0x{}] userEventTriggered evt: {}", ctx.channel().id(), evt);
+        }
         ctx.fireUserEventTriggered(evt);
     }
 }
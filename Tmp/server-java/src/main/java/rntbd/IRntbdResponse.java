@@ -1,7 +1,31 @@
 package rntbd;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 
 public interface IRntbdResponse {
+
+    /**
+     * Serializes the frame, the headers and, if a payload is present, its length prefix to the given buffer.
+     * <p>
+     * The payload bytes are not written. They are returned by {@link #getPayload()} and written by the encoder as a
+     * separate buffer so that they are never copied.
+     *
+     * @param out the output {@link ByteBuf byte buffer}; exactly {@link #getMessageLength()} bytes are written to it.
+     */
     void encode(final ByteBuf out);
+
+    /**
+     * Returns the number of bytes written by {@link #encode(ByteBuf)}.
+     */
+    int getMessageLength();
+
+    /**
+     * Returns the payload that follows the encoded message, or an empty buffer if there is none.
+     * <p>
+     * The payload is owned by the response. It is not retained by this call.
+     */
+    default ByteBuf getPayload() {
+        return Unpooled.EMPTY_BUFFER;
+    }
 }
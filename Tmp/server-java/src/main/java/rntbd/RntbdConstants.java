@@ -8,9 +8,12 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import io.netty.handler.codec.DecoderException;
 
+import java.lang.reflect.Array;
 import java.util.EnumSet;
 import java.util.stream.Collector;
+import java.util.stream.LongStream;
 
+import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Strings.lenientFormat;
 
 public final class RntbdConstants {
@@ -20,6 +23,44 @@ public final class RntbdConstants {
     private RntbdConstants() {
     }
 
+    /**
+     * Builds a dense table mapping each header id to its header, so decoders can index by id instead of boxing it
+     * for a map lookup. Unused ids map to {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Enum<T> & RntbdHeader> T[] toLookupTable(final Class<T> type, final ImmutableMap<Short, T> map) {
+
+        int maxId = 0;
+
+        for (final short id : map.keySet()) {
+            maxId = Math.max(maxId, id);
+        }
+
+        final T[] table = (T[]) Array.newInstance(type, maxId + 1);
+        map.forEach((id, header) -> table[id] = header);
+
+        return table;
+    }
+
+    /**
+     * Assigns each required header its own bit, indexed by header ordinal; optional headers get {@code 0}. A token
+     * stream ORs in the bit of every header it decodes and compares the result with the union of all bits.
+     */
+    private static <T extends Enum<T> & RntbdHeader> long[] toRequiredBits(final ImmutableSet<T> headers) {
+
+        final long[] bits = new long[headers.size()];
+        int next = 0;
+
+        for (final T header : headers) {
+            if (header.isRequired()) {
+                checkState(next < Long.SIZE, "more than %s required headers in %s", Long.SIZE, header.getDeclaringClass());
+                bits[header.ordinal()] = 1L << next++;
+            }
+        }
+
+        return bits;
+    }
+
     public enum RntbdConsistencyLevel {
 
         Strong((byte) 0x00),
@@ -71,10 +112,16 @@ public final class RntbdConstants {
 
         public static final ImmutableMap<Short, RntbdContextHeader> map;
         public static final ImmutableSet<RntbdContextHeader> set = Sets.immutableEnumSet(EnumSet.allOf(RntbdContextHeader.class));
+        static final RntbdContextHeader[] ids;
+        static final long[] requiredBits;
+        static final long requiredMask;
 
         static {
             final Collector<RntbdContextHeader, ?, ImmutableMap<Short, RntbdContextHeader>> collector = ImmutableMap.toImmutableMap(RntbdContextHeader::id, h -> h);
             map = set.stream().collect(collector);
+            ids = toLookupTable(RntbdContextHeader.class, map);
+            requiredBits = toRequiredBits(set);
+            requiredMask = LongStream.of(requiredBits).reduce(0L, (x, y) -> x | y);
         }
 
         private final short id;
@@ -108,10 +155,16 @@ public final class RntbdConstants {
 
         public static final ImmutableMap<Short, RntbdContextRequestHeader> map;
         public static final ImmutableSet<RntbdContextRequestHeader> set = Sets.immutableEnumSet(EnumSet.allOf(RntbdContextRequestHeader.class));
+        static final RntbdContextRequestHeader[] ids;
+        static final long[] requiredBits;
+        static final long requiredMask;
 
         static {
             final Collector<RntbdContextRequestHeader, ?, ImmutableMap<Short, RntbdContextRequestHeader>> collector = ImmutableMap.toImmutableMap(h -> h.id(), h -> h);
             map = set.stream().collect(collector);
+            ids = toLookupTable(RntbdContextRequestHeader.class, map);
+            requiredBits = toRequiredBits(set);
+            requiredMask = LongStream.of(requiredBits).reduce(0L, (x, y) -> x | y);
         }
 
         private final short id;
@@ -582,10 +635,16 @@ public final class RntbdConstants {
 
         public static final ImmutableMap<Short, RntbdRequestHeader> map;
         public static final ImmutableSet<RntbdRequestHeader> set = Sets.immutableEnumSet(EnumSet.allOf(RntbdRequestHeader.class));
+        static final RntbdRequestHeader[] ids;
+        static final long[] requiredBits;
+        static final long requiredMask;
 
         static {
             final Collector<RntbdRequestHeader, ?, ImmutableMap<Short, RntbdRequestHeader>> collector = ImmutableMap.toImmutableMap(RntbdRequestHeader::id, h -> h);
             map = set.stream().collect(collector);
+            ids = toLookupTable(RntbdRequestHeader.class, map);
+            requiredBits = toRequiredBits(set);
+            requiredMask = LongStream.of(requiredBits).reduce(0L, (x, y) -> x | y);
         }
 
         private final short id;
@@ -854,10 +913,16 @@ public final class RntbdConstants {
 
         public static final ImmutableMap<Short, RntbdResponseHeader> map;
         public static final ImmutableSet<RntbdResponseHeader> set = Sets.immutableEnumSet(EnumSet.allOf(RntbdResponseHeader.class));
+        static final RntbdResponseHeader[] ids;
+        static final long[] requiredBits;
+        static final long requiredMask;
 
         static {
             final Collector<RntbdResponseHeader, ?, ImmutableMap<Short, RntbdResponseHeader>> collector = ImmutableMap.toImmutableMap(RntbdResponseHeader::id, header -> header);
             map = set.stream().collect(collector);
+            ids = toLookupTable(RntbdResponseHeader.class, map);
+            requiredBits = toRequiredBits(set);
+            requiredMask = LongStream.of(requiredBits).reduce(0L, (x, y) -> x | y);
         }
 
         private final short id;
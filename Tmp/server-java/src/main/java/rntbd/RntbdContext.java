@@ -23,6 +23,8 @@ public final class RntbdContext implements IRntbdResponse {
     private final int protocolVersion;
     private final ServerProperties serverProperties;
     private final long unauthenticatedTimeoutInSeconds;
+    private final Headers headers;
+    private final RntbdResponseStatus responseStatus;
 
     public RntbdContext(
             final UUID activityId,
@@ -41,6 +43,9 @@ public final class RntbdContext implements IRntbdResponse {
         this.unauthenticatedTimeoutInSeconds = unauthenticatedTimeoutInSeconds;
         this.serverProperties = new ServerProperties(serverAgent, serverVersion);
 
+        this.headers = new Headers(this);
+        final int length = RntbdResponseStatus.LENGTH + this.headers.computeLength();
+        this.responseStatus = new RntbdResponseStatus(length, this.status, this.activityId);
     }
 
     @JsonProperty
@@ -91,19 +96,20 @@ public final class RntbdContext implements IRntbdResponse {
     @Override
     public void encode(final ByteBuf out) {
 
-        final Headers headers = new Headers(this);
-        final int length = RntbdResponseStatus.LENGTH + headers.computeLength();
-        final RntbdResponseStatus responseStatus = new RntbdResponseStatus(length, this.status(), this.activityId());
-
         final int start = out.writerIndex();
 
-        responseStatus.encode(out);
-        headers.encode(out);
-        headers.release();
+        this.responseStatus.encode(out);
+        this.headers.encode(out);
 
         final int end = out.writerIndex();
 
-        checkState(end - start == responseStatus.getLength());
+        checkState(end - start == this.responseStatus.getLength());
+    }
+
+    @JsonIgnore
+    @Override
+    public int getMessageLength() {
+        return this.responseStatus.getLength();
     }
 
     @Override
@@ -111,6 +117,58 @@ public final class RntbdContext implements IRntbdResponse {
         return ServerRntbdObjectMapper.toString(this);
     }
 
+    /**
+     * A handshake reply encoded once per server.
+     * <p>
+     * Replies to different connections differ only in {@code activityId}, which is patched into a copy of the encoded
+     * bytes, so a handshake neither builds a token stream nor encodes strings.
+     */
+    public static final class Template {
+
+        private static final int ACTIVITY_ID_OFFSET = Integer.BYTES + Integer.BYTES;  // length, status
+
+        private final ByteBuf encoded;
+
+        /**
+         * Encodes {@code context}; its activity ID is replaced by that of each reply.
+         *
+         * @param context the handshake reply of this server.
+         */
+        public Template(final RntbdContext context) {
+            final int length = context.getMessageLength();
+            final ByteBuf encoded = Unpooled.directBuffer(length, length);
+            context.encode(encoded);
+            this.encoded = Unpooled.unreleasableBuffer(encoded.asReadOnly());
+        }
+
+        public IRntbdResponse newResponse(final UUID activityId) {
+            return new Reply(this.encoded, activityId);
+        }
+    }
+
+    private static final class Reply implements IRntbdResponse {
+
+        private final ByteBuf encoded;
+        private final UUID activityId;
+
+        private Reply(final ByteBuf encoded, final UUID activityId) {
+            this.encoded = encoded;
+            this.activityId = activityId;
+        }
+
+        @Override
+        public void encode(final ByteBuf out) {
+            final int start = out.writerIndex();
+            out.writeBytes(this.encoded, this.encoded.readerIndex(), this.encoded.readableBytes());
+            RntbdUUID.encode(this.activityId, out, start + Template.ACTIVITY_ID_OFFSET);
+        }
+
+        @Override
+        public int getMessageLength() {
+            return this.encoded.readableBytes();
+        }
+    }
+
     private static final class Headers extends RntbdTokenStream<RntbdConstants.RntbdContextHeader> {
 
         final RntbdToken clientVersion;
@@ -131,7 +189,7 @@ public final class RntbdContext implements IRntbdResponse {
         }
 
         Headers(final ByteBuf in) {
-            super(RntbdConstants.RntbdContextHeader.set, RntbdConstants.RntbdContextHeader.map, in);
+            super(RntbdConstants.RntbdContextHeader.set, RntbdConstants.RntbdContextHeader.ids, RntbdConstants.RntbdContextHeader.requiredBits, RntbdConstants.RntbdContextHeader.requiredMask, in);
             this.clientVersion = this.get(RntbdConstants.RntbdContextHeader.ClientVersion);
             this.idleTimeoutInSeconds = this.get(RntbdConstants.RntbdContextHeader.IdleTimeoutInSeconds);
             this.protocolVersion = this.get(RntbdConstants.RntbdContextHeader.ProtocolVersion);
@@ -0,0 +1,336 @@
+package rntbd;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.IntFunction;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * In-memory document store backing the RNTBD server.
+ * <p>
+ * Documents are spread over a fixed number of partitions by partition key. Each partition stands in for a partition
+ * key range: it has its own log sequence number (LSN), which every write advances. Documents of a partition are kept in
+ * a {@link Table}: on the heap, or off-heap in memory-mapped segment files ({@link RntbdMappedTable}).
+ * <p>
+ * Each partition is owned by one event loop, which is the only thread that reads or writes it. Its data structures are
+ * plain, unsynchronized ones and no two cores contend on a partition. Requests received on another event loop are
+ * handed over to the owner through its task queue, a lock-free multiple-producer single-consumer queue.
+ * <p>
+ * Document bodies are immutable. A response keeps using a body after a later write replaces or deletes it, with no
+ * reference counting.
+ */
+public final class RntbdDocumentStore {
+
+    // region Fields
+
+    private static final Logger logger = LoggerFactory.getLogger(RntbdDocumentStore.class);
+
+    private final Partition[] partitions;
+
+    // endregion
+
+    /**
+     * Creates an empty store.
+     *
+     * @param partitionCount the number of partitions, or {@code 0} for one per event loop of {@code owners}.
+     * @param owners the event loops that own the partitions, which are assigned to them round robin.
+     * @param tables creates the table of the partition with the given id.
+     */
+    public RntbdDocumentStore(final int partitionCount, final EventExecutorGroup owners, final IntFunction<Table> tables) {
+
+        final List<EventExecutor> executors = new ArrayList<>();
+        owners.forEach(executors::add);
+
+        checkArgument(!executors.isEmpty(), "expected at least one event loop");
+        checkArgument(partitionCount >= 0, "expected non-negative partition count, not %s", partitionCount);
+
+        final int count = partitionCount == 0 ? executors.size() : partitionCount;
+        this.partitions = new Partition[count];
+
+        for (int i = 0; i < count; i++) {
+            this.partitions[i] = new Partition(i, executors.get(i % executors.size()), tables.apply(i));
+        }
+    }
+
+    // region Methods
+
+    public int partitionCount() {
+        return this.partitions.length;
+    }
+
+    /**
+     * Returns the partition that owns the given partition key.
+     */
+    public Partition partition(final String partitionKey) {
+        final int hash = partitionKey.hashCode();
+        return this.partitions[Math.floorMod(hash ^ (hash >>> 16), this.partitions.length)];
+    }
+
+    // endregion
+
+    // region Types
+
+    /**
+     * A version of a document.
+     */
+    public static final class Document {
+
+        /**
+         * The document body: a read-only, unreleasable buffer. Hand out {@link ByteBuf#retainedDuplicate()}s.
+         */
+        public final ByteBuf body;
+        public final String eTag;
+        public final long lsn;
+
+        public Document(final ByteBuf body, final String eTag, final long lsn) {
+            this.body = body;
+            this.eTag = eTag;
+            this.lsn = lsn;
+        }
+    }
+
+    /**
+     * The outcome of a write: a status code, the document written or deleted, and the LSN of the partition after the
+     * write.
+     */
+    public static final class Write {
+
+        public final int status;
+        public final Document document;
+        public final long lsn;
+
+        Write(final int status, final Document document, final long lsn) {
+            this.status = status;
+            this.document = document;
+            this.lsn = lsn;
+        }
+    }
+
+    /**
+     * Documents of one partition, keyed by document key. Only called on the owner of the partition.
+     */
+    public interface Table {
+
+        /**
+         * Returns the document with the given key, or {@code null}.
+         */
+        Document get(String key);
+
+        /**
+         * Stores a new version of a document.
+         *
+         * @return the stored document, or {@code null} if it is too large to be stored.
+         * @throws UncheckedIOException if storage could not be extended.
+         */
+        Document put(String key, byte[] body, String eTag, long lsn);
+
+        void remove(String key);
+    }
+
+    /**
+     * A {@link Table} on the heap.
+     */
+    public static final class HeapTable implements Table {
+
+        private final HashMap<String, Document> documents = new HashMap<>();
+
+        @Override
+        public Document get(final String key) {
+            return this.documents.get(key);
+        }
+
+        @Override
+        public Document put(final String key, final byte[] body, final String eTag, final long lsn) {
+            final ByteBuf buffer = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(body).asReadOnly());
+            final Document document = new Document(buffer, eTag, lsn);
+            this.documents.put(key, document);
+            return document;
+        }
+
+        @Override
+        public void remove(final String key) {
+            this.documents.remove(key);
+        }
+    }
+
+    /**
+     * Documents of one partition.
+     * <p>
+     * Writes succeed with the status code of the service: 201 for a new document, 200 for a replaced one and 204 for a
+     * deleted one. They fail with 404 when the document is missing, 409 when it already exists and 412 when
+     * {@code ifMatch} is not its ETag. An {@code ifMatch} of {@code null} matches any document. A document that
+     * the table cannot hold fails with 413, and one it cannot store for lack of space with 507.
+     * <p>
+     * A write is applied and gets its LSN at once, but the LSN reported by {@link #lsn()} only advances when the write
+     * is {@link #commit committed}, for example once it is durable in a {@link RntbdWriteAheadLog}.
+     * <p>
+     * All methods but {@link #id()}, {@link #owner()} and {@link #rangeId()} must be called on the owner.
+     */
+    public static final class Partition {
+
+        private final int id;
+        private final String rangeId;
+        private final EventExecutor owner;
+        private final Table table;
+
+        private long lsn;  // of the last write applied
+        private long committedLsn;
+
+        Partition(final int id, final EventExecutor owner, final Table table) {
+            this.id = id;
+            this.rangeId = Integer.toString(id);
+            this.owner = owner;
+            this.table = table;
+        }
+
+        public int id() {
+            return this.id;
+        }
+
+        /**
+         * Returns the committed LSN.
+         */
+        public long lsn() {
+            assert this.owner.inEventLoop();
+            return this.committedLsn;
+        }
+
+        /**
+         * Marks the write with the given LSN, and so all earlier ones, committed.
+         */
+        public void commit(final long lsn) {
+            assert this.owner.inEventLoop();
+            if (lsn > this.committedLsn) {
+                this.committedLsn = lsn;
+            }
+        }
+
+        /**
+         * Returns the event loop that owns this partition.
+         */
+        public EventExecutor owner() {
+            return this.owner;
+        }
+
+        /**
+         * Returns the partition key range ID reported in responses.
+         */
+        public String rangeId() {
+            return this.rangeId;
+        }
+
+        /**
+         * Returns the session token of the given LSN, in the {@code <range-id>:-1#<lsn>} form of the service.
+         */
+        public String sessionToken(final long lsn) {
+            return this.rangeId + ":-1#" + lsn;
+        }
+
+        public Document read(final String key) {
+            assert this.owner.inEventLoop();
+            return this.table.get(key);
+        }
+
+        public Write create(final String key, final byte[] body) {
+
+            assert this.owner.inEventLoop();
+
+            if (this.table.get(key) != null) {
+                return this.fail(409);
+            }
+
+            return this.put(key, body, 201);
+        }
+
+        public Write upsert(final String key, final byte[] body, final String ifMatch) {
+
+            assert this.owner.inEventLoop();
+
+            final Document current = this.table.get(key);
+
+            if (current == null) {
+                return this.put(key, body, 201);
+            }
+
+            if (ifMatch != null && !ifMatch.equals(current.eTag)) {
+                return this.fail(412);
+            }
+
+            return this.put(key, body, 200);
+        }
+
+        public Write replace(final String key, final byte[] body, final String ifMatch) {
+
+            assert this.owner.inEventLoop();
+
+            final Document current = this.table.get(key);
+
+            if (current == null) {
+                return this.fail(404);
+            }
+
+            if (ifMatch != null && !ifMatch.equals(current.eTag)) {
+                return this.fail(412);
+            }
+
+            return this.put(key, body, 200);
+        }
+
+        public Write delete(final String key, final String ifMatch) {
+
+            assert this.owner.inEventLoop();
+
+            final Document current = this.table.get(key);
+
+            if (current == null) {
+                return this.fail(404);
+            }
+
+            if (ifMatch != null && !ifMatch.equals(current.eTag)) {
+                return this.fail(412);
+            }
+
+            this.table.remove(key);
+            this.lsn++;
+
+            return new Write(204, current, this.lsn);
+        }
+
+        private Write fail(final int status) {
+            return new Write(status, null, this.committedLsn);
+        }
+
+        private Write put(final String key, final byte[] body, final int status) {
+
+            final long lsn = this.lsn + 1;
+            final Document document;
+
+            try {
+                document = this.table.put(key, body, '"' + new UUID(this.id, lsn).toString() + '"', lsn);
+            } catch (final UncheckedIOException error) {
+                logger.error("[partition: {}] failed to store document: {}", this.rangeId, error.toString());
+                return this.fail(507);
+            }
+
+            if (document == null) {
+                return this.fail(413);
+            }
+
+            this.lsn = lsn;
+            return new Write(status, document, lsn);
+        }
+    }
+
+    // endregion
+}
@@ -2,23 +2,43 @@ package rntbd;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
-import io.netty.util.ReferenceCountUtil;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import io.netty.handler.codec.MessageToMessageEncoder;
 
-public final class RntbdEncoder extends MessageToByteEncoder<IRntbdResponse> {
-    private final static Logger logger = LoggerFactory.getLogger(RntbdEncoder.class);
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Encodes a response into an exactly sized buffer for its frame and headers, followed by its payload as a second
+ * buffer.
+ * <p>
+ * The payload is never copied: the transport gathers both buffers into one write, and {@link io.netty.handler.ssl.SslHandler}
+ * coalesces them before encryption. The response is released once encoded; the payload buffer holds its own
+ * reference.
+ */
+public final class RntbdEncoder extends MessageToMessageEncoder<IRntbdResponse> {
 
     @Override
-    protected void encode(ChannelHandlerContext ctx, IRntbdResponse msg, ByteBuf out) {
-        logger.info("[cid: 0x{} msg-id: {}] encode", ctx.channel().id(), msg.hashCode());
+    protected void encode(ChannelHandlerContext ctx, IRntbdResponse msg, List<Object> out) {
+        final int length = msg.getMessageLength();
+        final ByteBuf message = ctx.alloc().ioBuffer(length, length);
+
+        try {
+            msg.encode(message);
+            checkState(message.writerIndex() == length, "expected %s bytes, not %s", length, message.writerIndex());
+        } catch (final RuntimeException error) {
+            message.release();
+            throw error;
+        }
+
+        out.add(message);
 
-        msg.encode(out);
+        final ByteBuf payload = msg.getPayload();
 
-        // HACK!!!
-        if (ReferenceCountUtil.refCnt(msg) == 0) {
-            ReferenceCountUtil.retain(msg);
+        if (payload.isReadable()) {
+            // A slice, not a duplicate: a duplicate of a slice spans its whole parent, and SslHandler, which coalesces
+            // queued writes into the first writable one, would append to it over the bytes that follow the payload
+            out.add(payload.retainedSlice());
         }
     }
 }
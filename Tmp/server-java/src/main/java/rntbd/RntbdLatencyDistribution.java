@@ -0,0 +1,178 @@
+package rntbd;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.lenientFormat;
+
+/**
+ * Distribution of the latency injected before each response is written.
+ * <p>
+ * Specifications have the form {@code name[:arguments]}, with all times in milliseconds:
+ * <ul>
+ * <li>{@code none}: respond immediately.
+ * <li>{@code fixed:<delay>}: always the same delay.
+ * <li>{@code uniform:<min>,<max>}: uniform in {@code [min, max)}.
+ * <li>{@code exponential:<mean>}: exponential with the given mean.
+ * <li>{@code percentiles:<p>=<delay>,...}: replays a measured latency profile, for example
+ * {@code percentiles:50=1,90=4,99=12,100=40}, interpolating linearly between percentiles. If the last percentile is
+ * below 100, samples above it get its delay.
+ * </ul>
+ */
+public interface RntbdLatencyDistribution {
+
+    /**
+     * Returns the next delay in nanoseconds. Called on event loops; implementations must be thread safe.
+     */
+    long nextDelayNanos();
+
+    static RntbdLatencyDistribution parse(final String specification) {
+
+        final int colon = specification.indexOf(':');
+        final String name = (colon < 0 ? specification : specification.substring(0, colon)).trim().toLowerCase();
+        final String[] arguments = colon < 0 ? new String[0] : specification.substring(colon + 1).split(",");
+
+        try {
+            switch (name) {
+                case "none":
+                    return new Fixed(0L);
+                case "fixed":
+                    checkArgument(arguments.length == 1, "expected fixed:<delay>");
+                    return new Fixed(toNanos(arguments[0]));
+                case "uniform":
+                    checkArgument(arguments.length == 2, "expected uniform:<min>,<max>");
+                    return new Uniform(toNanos(arguments[0]), toNanos(arguments[1]));
+                case "exponential":
+                    checkArgument(arguments.length == 1, "expected exponential:<mean>");
+                    return new Exponential(toNanos(arguments[0]));
+                case "percentiles":
+                    return Percentiles.parse(arguments);
+                default:
+                    throw new IllegalArgumentException("unknown distribution: " + name);
+            }
+        } catch (final IllegalArgumentException error) {
+            final String message = lenientFormat("invalid latency distribution %s: %s", specification, error.getMessage());
+            throw new IllegalArgumentException(message, error);
+        }
+    }
+
+    static long toNanos(final String milliseconds) {
+        final double value = Double.parseDouble(milliseconds.trim());
+        checkArgument(value >= 0, "expected non-negative delay, not %s", value);
+        return (long) (value * TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    // region Types
+
+    final class Fixed implements RntbdLatencyDistribution {
+
+        private final long delay;
+
+        Fixed(final long delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public long nextDelayNanos() {
+            return this.delay;
+        }
+    }
+
+    final class Uniform implements RntbdLatencyDistribution {
+
+        private final long min;
+        private final long max;
+
+        Uniform(final long min, final long max) {
+            checkArgument(min <= max, "expected min <= max, not %s > %s", min, max);
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public long nextDelayNanos() {
+            return this.min == this.max ? this.min : ThreadLocalRandom.current().nextLong(this.min, this.max);
+        }
+    }
+
+    final class Exponential implements RntbdLatencyDistribution {
+
+        private final double mean;
+
+        Exponential(final long mean) {
+            this.mean = mean;
+        }
+
+        @Override
+        public long nextDelayNanos() {
+            return (long) (-this.mean * Math.log(1.0 - ThreadLocalRandom.current().nextDouble()));
+        }
+    }
+
+    final class Percentiles implements RntbdLatencyDistribution {
+
+        // Ascending percentiles in [0, 100] and the delay observed at each; the first point is (0, delays[0])
+        private final double[] percentiles;
+        private final long[] delays;
+
+        private Percentiles(final double[] percentiles, final long[] delays) {
+            this.percentiles = percentiles;
+            this.delays = delays;
+        }
+
+        static Percentiles parse(final String[] arguments) {
+
+            checkArgument(arguments.length > 0, "expected percentiles:<p>=<delay>,...");
+
+            // Room for the first point at 0 and, if the last percentile is below 100, for an implicit one at 100
+            final double[] percentiles = new double[arguments.length + 2];
+            final long[] delays = new long[arguments.length + 2];
+
+            for (int i = 0; i < arguments.length; i++) {
+                final String[] pair = arguments[i].split("=");
+                checkArgument(pair.length == 2, "expected <p>=<delay>, not %s", arguments[i]);
+                final double percentile = Double.parseDouble(pair[0].trim());
+                checkArgument(percentiles[i] < percentile && percentile <= 100, "expected ascending percentiles in (0, 100]");
+                percentiles[i + 1] = percentile;
+                delays[i + 1] = toNanos(pair[1]);
+                checkArgument(delays[i] <= delays[i + 1] || i == 0, "expected non-decreasing delays");
+            }
+
+            delays[0] = delays[1];
+
+            final int last = arguments.length;
+
+            if (percentiles[last] == 100) {
+                return new Percentiles(Arrays.copyOf(percentiles, last + 1), Arrays.copyOf(delays, last + 1));
+            }
+
+            percentiles[last + 1] = 100;  // the last point caps the distribution
+            delays[last + 1] = delays[last];
+
+            return new Percentiles(percentiles, delays);
+        }
+
+        @Override
+        public long nextDelayNanos() {
+
+            final double sample = ThreadLocalRandom.current().nextDouble(100.0);
+            int index = Arrays.binarySearch(this.percentiles, sample);
+
+            if (index >= 0) {
+                return this.delays[index];
+            }
+
+            index = -index - 1;  // first percentile above sample; index > 0 because percentiles[0] == 0
+
+            final double low = this.percentiles[index - 1];
+            final double high = this.percentiles[index];
+            final double fraction = (sample - low) / (high - low);
+
+            return this.delays[index - 1] + (long) (fraction * (this.delays[index] - this.delays[index - 1]));
+        }
+    }
+
+    // endregion
+}
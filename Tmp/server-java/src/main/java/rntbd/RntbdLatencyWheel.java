@@ -0,0 +1,217 @@
+package rntbd;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Delays responses by the injected latency on a hashed timing wheel owned by one event loop.
+ * <p>
+ * Scheduling a response appends it to a wheel slot: no task is queued per response and there is no shared random
+ * number generator. While responses are pending the wheel runs one task per tick. It writes every response that is
+ * due and then flushes each channel it wrote to once.
+ * <p>
+ * Responses to a channel that closed while they were pending are released, not written: writing them would fail
+ * each one and report the failure to the pipeline as an exception.
+ */
+final class RntbdLatencyWheel implements Runnable {
+
+    // region Fields
+
+    private static final RntbdLatencyDistribution distribution = RntbdLatencyDistribution.parse(Configs.getLatency());
+    private static final long tickNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(1, Configs.getLatencyTickMicros()));
+
+    private static final int WHEEL_SIZE = 512;  // power of two: a round covers 512 ticks
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int WHEEL_SHIFT = Integer.numberOfTrailingZeros(WHEEL_SIZE);
+
+    private static final FastThreadLocal<RntbdLatencyWheel> wheels = new FastThreadLocal<>();
+
+    private final EventExecutor executor;
+    private final Slot[] slots;
+    private final long startTime;
+    private final Set<ChannelHandlerContext> written;
+
+    private long tick;  // next tick to run
+    private int pending;
+
+    // endregion
+
+    private RntbdLatencyWheel(final EventExecutor executor) {
+        this.executor = executor;
+        this.slots = new Slot[WHEEL_SIZE];
+        this.startTime = System.nanoTime();
+        this.written = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            this.slots[i] = new Slot();
+        }
+    }
+
+    // region Methods
+
+    /**
+     * Writes and flushes {@code response} after a delay drawn from the configured distribution.
+     * <p>
+     * Must be called on the event loop of {@code context}. A delay shorter than one tick is not injected. A response
+     * to a channel that is no longer active is released instead.
+     *
+     * @param context the context used to write the response.
+     * @param response the response.
+     */
+    static void schedule(final ChannelHandlerContext context, final Object response) {
+
+        final long delay = distribution.nextDelayNanos();
+
+        if (delay < tickNanos) {
+            if (context.channel().isActive()) {
+                context.writeAndFlush(response, context.voidPromise());
+            } else {
+                ReferenceCountUtil.release(response);
+            }
+            return;
+        }
+
+        final EventExecutor executor = context.executor();
+        checkState(executor.inEventLoop(), "expected to be called on the event loop");
+
+        RntbdLatencyWheel wheel = wheels.get();
+
+        if (wheel == null || wheel.executor != executor) {
+            wheel = new RntbdLatencyWheel(executor);
+            wheels.set(wheel);
+        }
+
+        wheel.add(context, response, delay);
+    }
+
+    /**
+     * Runs all ticks that elapsed since the last run.
+     */
+    @Override
+    public void run() {
+
+        final long now = System.nanoTime();
+        final long last = (now - this.startTime) / tickNanos;
+
+        while (this.tick <= last && this.pending > 0) {
+            this.pending -= this.slots[(int) (this.tick & WHEEL_MASK)].expire(this.written);
+            this.tick++;
+        }
+
+        if (this.pending == 0) {
+            this.tick = last + 1;
+        }
+
+        for (final ChannelHandlerContext context : this.written) {
+            context.flush();
+        }
+
+        this.written.clear();
+
+        if (this.pending > 0) {
+            this.scheduleTick(now);
+        }
+    }
+
+    private void add(final ChannelHandlerContext context, final Object response, final long delay) {
+
+        final long now = System.nanoTime();
+        final long elapsed = now - this.startTime;
+
+        if (this.pending == 0) {
+            this.tick = Math.max(this.tick, elapsed / tickNanos + 1);  // idle: no tick task is scheduled
+        }
+
+        final long due = Math.max((elapsed + delay) / tickNanos, this.tick);
+        this.slots[(int) (due & WHEEL_MASK)].add(context, response, (int) ((due - this.tick) >> WHEEL_SHIFT));
+
+        if (this.pending++ == 0) {
+            this.scheduleTick(now);
+        }
+    }
+
+    private void scheduleTick(final long now) {
+        final long delay = this.startTime + this.tick * tickNanos - now;
+        this.executor.schedule(this, Math.max(0L, delay), TimeUnit.NANOSECONDS);
+    }
+
+    // endregion
+
+    // region Types
+
+    /**
+     * Responses hashed to one position of the wheel, in parallel arrays so that scheduling allocates nothing.
+     */
+    private static final class Slot {
+
+        private ChannelHandlerContext[] contexts = new ChannelHandlerContext[8];
+        private Object[] responses = new Object[8];
+        private int[] rounds = new int[8];
+        private int size;
+
+        void add(final ChannelHandlerContext context, final Object response, final int rounds) {
+
+            if (this.size == this.contexts.length) {
+                final int capacity = this.size << 1;
+                this.contexts = Arrays.copyOf(this.contexts, capacity);
+                this.responses = Arrays.copyOf(this.responses, capacity);
+                this.rounds = Arrays.copyOf(this.rounds, capacity);
+            }
+
+            this.contexts[this.size] = context;
+            this.responses[this.size] = response;
+            this.rounds[this.size] = rounds;
+            this.size++;
+        }
+
+        /**
+         * Writes the responses due in this round and keeps the others for a later round. Responses due to a channel
+         * that is no longer active are released.
+         *
+         * @return the number of responses written or released.
+         */
+        int expire(final Set<ChannelHandlerContext> written) {
+
+            int kept = 0;
+
+            for (int i = 0; i < this.size; i++) {
+
+                final ChannelHandlerContext context = this.contexts[i];
+
+                if (this.rounds[i] == 0) {
+                    if (context.channel().isActive()) {
+                        context.write(this.responses[i], context.voidPromise());
+                        written.add(context);
+                    } else {
+                        ReferenceCountUtil.release(this.responses[i]);
+                    }
+                } else {
+                    this.contexts[kept] = context;
+                    this.responses[kept] = this.responses[i];
+                    this.rounds[kept] = this.rounds[i] - 1;
+                    kept++;
+                }
+            }
+
+            final int expired = this.size - kept;
+
+            Arrays.fill(this.contexts, kept, this.size, null);
+            Arrays.fill(this.responses, kept, this.size, null);
+            this.size = kept;
+
+            return expired;
+        }
+    }
+
+    // endregion
+}
@@ -0,0 +1,308 @@
+package rntbd;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import rntbd.RntbdDocumentStore.Document;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A {@link RntbdDocumentStore.Table} that keeps documents off-heap, in memory-mapped segment files.
+ * <p>
+ * Each version of a document is appended to the current segment as a record:
+ * <pre>{@code
+ * [int record length][int key length][int ETag length][long LSN][key][ETag][body]
+ * }</pre>
+ * When the current segment is full a new one is mapped. An off-heap open-addressing index maps the 64-bit hash of a
+ * key to the segment and offset of the latest record of the document, with linear probing and backward-shift deletion.
+ * The key stored in the record resolves hash collisions. The heap holds neither bodies nor keys, so the dataset is
+ * bounded by disk and address space rather than by heap size.
+ * <p>
+ * Reads return the body as a read-only slice of the mapped segment: the bytes go from the page cache to the socket
+ * without a copy through the heap. Records are never overwritten and segments stay mapped until the process exits,
+ * so a body stays valid after a later write replaces or deletes the document. Space held by old versions is not
+ * reclaimed, and the table is not persistent: segments are recreated on start.
+ */
+public final class RntbdMappedTable implements RntbdDocumentStore.Table {
+
+    // region Fields
+
+    private static final int RECORD_HEADER_LENGTH = 3 * Integer.BYTES + Long.BYTES;
+
+    // Index slot: [long key hash, 0 if empty][int segment][int record offset]
+    private static final int SLOT_LENGTH = Long.BYTES + 2 * Integer.BYTES;
+    private static final int INITIAL_SLOTS = 1 << 16;
+    private static final int MAX_SLOTS = 1 << 26;  // largest power of two whose slots fit in a buffer
+
+    private final Path directory;
+    private final String prefix;
+    private final int segmentSize;
+    private final List<ByteBuf> segments = new ArrayList<>();  // read-only, unreleasable views
+    private ByteBuf current;  // writable view of the last segment; its writerIndex is the append position
+
+    private ByteBuf index;
+    private int mask;
+    private int size;
+
+    // endregion
+
+    /**
+     * Creates an empty table, removing segments left by an earlier run.
+     *
+     * @param directory the directory of the segment files.
+     * @param partition the id of the partition, which names its segment files.
+     * @param segmentSize the size of a segment file in bytes.
+     */
+    public RntbdMappedTable(final Path directory, final int partition, final int segmentSize) {
+
+        checkArgument(segmentSize > RECORD_HEADER_LENGTH, "expected segment size > %s, not %s", RECORD_HEADER_LENGTH, segmentSize);
+
+        this.directory = directory;
+        this.prefix = "partition-" + partition + '-';
+        this.segmentSize = segmentSize;
+
+        try {
+            Files.createDirectories(directory);
+            try (final Stream<Path> files = Files.list(directory)) {
+                for (final Path file : (Iterable<Path>) files::iterator) {
+                    if (file.getFileName().toString().startsWith(this.prefix)) {
+                        Files.delete(file);
+                    }
+                }
+            }
+        } catch (final IOException error) {
+            throw new UncheckedIOException(error);
+        }
+
+        this.index = Unpooled.directBuffer(INITIAL_SLOTS * SLOT_LENGTH, INITIAL_SLOTS * SLOT_LENGTH);
+        this.index.setZero(0, this.index.capacity());
+        this.mask = INITIAL_SLOTS - 1;
+    }
+
+    // region Methods
+
+    @Override
+    public Document get(final String key) {
+
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final int slot = this.find(hash(keyBytes), keyBytes);
+
+        if (slot < 0) {
+            return null;
+        }
+
+        final ByteBuf segment = this.segments.get(this.index.getInt(slot * SLOT_LENGTH + Long.BYTES));
+        final int offset = this.index.getInt(slot * SLOT_LENGTH + Long.BYTES + Integer.BYTES);
+
+        final int recordLength = segment.getInt(offset);
+        final int keyLength = segment.getInt(offset + Integer.BYTES);
+        final int eTagLength = segment.getInt(offset + 2 * Integer.BYTES);
+        final long lsn = segment.getLong(offset + 3 * Integer.BYTES);
+
+        final int eTagOffset = offset + RECORD_HEADER_LENGTH + keyLength;
+        final int bodyOffset = eTagOffset + eTagLength;
+        final String eTag = segment.toString(eTagOffset, eTagLength, StandardCharsets.UTF_8);
+
+        return new Document(segment.slice(bodyOffset, offset + recordLength - bodyOffset), eTag, lsn);
+    }
+
+    @Override
+    public Document put(final String key, final byte[] body, final String eTag, final long lsn) {
+
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final byte[] eTagBytes = eTag.getBytes(StandardCharsets.UTF_8);
+        final long recordLength = (long) RECORD_HEADER_LENGTH + keyBytes.length + eTagBytes.length + body.length;
+
+        if (recordLength > this.segmentSize) {
+            return null;
+        }
+
+        if (this.current == null || this.current.writableBytes() < recordLength) {
+            this.map();
+        }
+
+        final int segment = this.segments.size() - 1;
+        final int offset = this.current.writerIndex();
+
+        this.current.writeInt((int) recordLength)
+                .writeInt(keyBytes.length)
+                .writeInt(eTagBytes.length)
+                .writeLong(lsn)
+                .writeBytes(keyBytes)
+                .writeBytes(eTagBytes)
+                .writeBytes(body);
+
+        final long hash = hash(keyBytes);
+        int slot = this.find(hash, keyBytes);
+
+        if (slot < 0) {
+            if (this.size + 1 > (this.mask + 1) - ((this.mask + 1) >>> 2)) {  // load factor 0.75
+                this.resize();
+                slot = this.find(hash, keyBytes);
+            }
+            slot = -slot - 1;
+            this.size++;
+        }
+
+        final int position = slot * SLOT_LENGTH;
+        this.index.setLong(position, hash);
+        this.index.setInt(position + Long.BYTES, segment);
+        this.index.setInt(position + Long.BYTES + Integer.BYTES, offset);
+
+        final int bodyOffset = offset + RECORD_HEADER_LENGTH + keyBytes.length + eTagBytes.length;
+        return new Document(this.segments.get(segment).slice(bodyOffset, body.length), eTag, lsn);
+    }
+
+    @Override
+    public void remove(final String key) {
+
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int hole = this.find(hash(keyBytes), keyBytes);
+
+        if (hole < 0) {
+            return;
+        }
+
+        // Backward-shift deletion: move up each later entry of the probe run that may live in the hole
+        for (int next = (hole + 1) & this.mask; ; next = (next + 1) & this.mask) {
+
+            final long hash = this.index.getLong(next * SLOT_LENGTH);
+
+            if (hash == 0L) {
+                break;
+            }
+
+            final int home = home(hash, this.mask);
+
+            if (((next - home) & this.mask) >= ((next - hole) & this.mask)) {
+                this.index.setBytes(hole * SLOT_LENGTH, this.index, next * SLOT_LENGTH, SLOT_LENGTH);
+                hole = next;
+            }
+        }
+
+        this.index.setZero(hole * SLOT_LENGTH, SLOT_LENGTH);
+        this.size--;
+    }
+
+    /**
+     * Returns the slot of {@code key}, or {@code -slot - 1} where {@code slot} is the empty slot that ends its probe
+     * run.
+     */
+    private int find(final long hash, final byte[] key) {
+
+        for (int slot = home(hash, this.mask); ; slot = (slot + 1) & this.mask) {
+
+            final long candidate = this.index.getLong(slot * SLOT_LENGTH);
+
+            if (candidate == 0L) {
+                return -slot - 1;
+            }
+
+            if (candidate == hash && this.keyEquals(slot, key)) {
+                return slot;
+            }
+        }
+    }
+
+    private boolean keyEquals(final int slot, final byte[] key) {
+
+        final ByteBuf segment = this.segments.get(this.index.getInt(slot * SLOT_LENGTH + Long.BYTES));
+        final int offset = this.index.getInt(slot * SLOT_LENGTH + Long.BYTES + Integer.BYTES);
+
+        if (segment.getInt(offset + Integer.BYTES) != key.length) {
+            return false;
+        }
+
+        final int start = offset + RECORD_HEADER_LENGTH;
+
+        for (int i = 0; i < key.length; i++) {
+            if (segment.getByte(start + i) != key[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Maps a new segment file and makes it the current segment.
+     */
+    private void map() {
+
+        final Path file = this.directory.resolve(this.prefix + this.segments.size() + ".segment");
+
+        try (final FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+            // The mapping outlives the channel; the buffer does not own the memory, so releasing it frees nothing
+            final ByteBuf segment = Unpooled.wrappedBuffer(channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize));
+            this.current = segment.clear();
+            this.segments.add(Unpooled.unreleasableBuffer(segment.duplicate().setIndex(0, this.segmentSize).asReadOnly()));
+
+        } catch (final IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    private void resize() {
+
+        final int slots = (this.mask + 1) << 1;
+
+        if (slots > MAX_SLOTS) {
+            throw new UncheckedIOException(new IOException("index full: " + this.size + " documents"));
+        }
+
+        final ByteBuf previous = this.index;
+        final int previousSlots = this.mask + 1;
+
+        this.index = Unpooled.directBuffer(slots * SLOT_LENGTH, slots * SLOT_LENGTH);
+        this.index.setZero(0, this.index.capacity());
+        this.mask = slots - 1;
+
+        for (int i = 0; i < previousSlots; i++) {
+
+            final long hash = previous.getLong(i * SLOT_LENGTH);
+
+            if (hash != 0L) {
+                int slot = home(hash, this.mask);
+                while (this.index.getLong(slot * SLOT_LENGTH) != 0L) {
+                    slot = (slot + 1) & this.mask;
+                }
+                this.index.setBytes(slot * SLOT_LENGTH, previous, i * SLOT_LENGTH, SLOT_LENGTH);
+            }
+        }
+
+        previous.release();
+    }
+
+    /**
+     * Returns a non-zero 64-bit FNV-1a hash of {@code key}.
+     */
+    private static long hash(final byte[] key) {
+
+        long hash = 0xcbf29ce484222325L;
+
+        for (final byte b : key) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+
+        return hash == 0L ? 1L : hash;
+    }
+
+    private static int home(final long hash, final int mask) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    // endregion
+}
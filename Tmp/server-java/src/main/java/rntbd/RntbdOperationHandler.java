@@ -0,0 +1,80 @@
+package rntbd;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Serves one kind of RNTBD request, identified by its resource type and operation type.
+ * <p>
+ * Handlers are registered in an {@link RntbdOperationRegistry} and called on the event loop of the connection that
+ * received the request. They must not block. A handler may answer later, from another thread, by passing its response
+ * to {@link #respond}; most handlers answer at once and implement {@link Synchronous} instead.
+ */
+@FunctionalInterface
+public interface RntbdOperationHandler {
+
+    /**
+     * Serves {@code request}.
+     * <p>
+     * The handler owns {@code request} and must release it. It must eventually {@link #respond} exactly once.
+     *
+     * @param context the context of the connection that received the request.
+     * @param request the request.
+     */
+    void handle(ChannelHandlerContext context, RntbdRequest request);
+
+    /**
+     * Writes the response to {@code request}, which may already be released, from any thread.
+     * <p>
+     * A response produced on another thread is handed over to the event loop of {@code context} first.
+     *
+     * @param context the context of the connection that received the request.
+     * @param request the request.
+     * @param response the response, which is written and then released.
+     */
+    static void respond(final ChannelHandlerContext context, final RntbdRequest request, final IRntbdResponse response) {
+        if (context.executor().inEventLoop()) {
+            RntbdTrace.request(RntbdTrace.Event.RESPONDED, context.channel(), request);
+            RntbdLatencyWheel.schedule(context, response);
+        } else {
+            context.executor().execute(() -> respond(context, request, response));
+        }
+    }
+
+    // region Types
+
+    /**
+     * A handler that returns its response before it returns.
+     */
+    @FunctionalInterface
+    interface Synchronous extends RntbdOperationHandler {
+
+        /**
+         * Returns the response to {@code request}.
+         * <p>
+         * The caller releases {@code request} once this method returns. A response that references the request
+         * payload must hold its own reference, for example a {@link io.netty.buffer.ByteBuf#retainedSlice()}.
+         *
+         * @param request the request.
+         *
+         * @return the response, which is written and then released by the caller.
+         */
+        IRntbdResponse handle(RntbdRequest request);
+
+        @Override
+        default void handle(final ChannelHandlerContext context, final RntbdRequest request) {
+
+            final IRntbdResponse response;
+
+            try {
+                response = this.handle(request);
+            } finally {
+                ReferenceCountUtil.release(request);
+            }
+
+            respond(context, request, response);
+        }
+    }
+
+    // endregion
+}
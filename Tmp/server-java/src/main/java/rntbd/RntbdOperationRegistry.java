@@ -0,0 +1,110 @@
+package rntbd;
+
+import rntbd.RntbdConstants.RntbdOperationType;
+import rntbd.RntbdConstants.RntbdResourceType;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Maps RNTBD resource and operation types to their {@link RntbdOperationHandler}.
+ * <p>
+ * Handlers are held in a dense table indexed by resource type id and operation type id, so that dispatching a
+ * request costs two array loads. Requests with no registered handler, including those with ids outside the table, go
+ * to the fallback handler.
+ * <p>
+ * Register all handlers before the registry is shared with event loops; lookups are not synchronized.
+ */
+public final class RntbdOperationRegistry {
+
+    // region Fields
+
+    private static final int RESOURCE_TYPE_COUNT = 1 + Arrays.stream(RntbdResourceType.values())
+            .mapToInt(RntbdResourceType::id)
+            .max()
+            .getAsInt();
+
+    private static final int OPERATION_TYPE_COUNT = 1 + Arrays.stream(RntbdOperationType.values())
+            .mapToInt(RntbdOperationType::id)
+            .max()
+            .getAsInt();
+
+    private final RntbdOperationHandler fallback;
+    private final RntbdOperationHandler[][] handlers;
+
+    // endregion
+
+    /**
+     * Creates a registry with no handlers.
+     *
+     * @param fallback the handler of requests with no registered handler.
+     */
+    public RntbdOperationRegistry(final RntbdOperationHandler.Synchronous fallback) {
+        this((RntbdOperationHandler) fallback);
+    }
+
+    /**
+     * Creates a registry with no handlers and an asynchronous fallback handler.
+     *
+     * @param fallback the handler of requests with no registered handler.
+     */
+    public RntbdOperationRegistry(final RntbdOperationHandler fallback) {
+
+        this.fallback = checkNotNull(fallback, "expected non-null fallback");
+        this.handlers = new RntbdOperationHandler[RESOURCE_TYPE_COUNT][OPERATION_TYPE_COUNT];
+
+        for (final RntbdOperationHandler[] row : this.handlers) {
+            Arrays.fill(row, fallback);
+        }
+    }
+
+    // region Methods
+
+    /**
+     * Returns the handler of the given resource type and operation type ids, or the fallback handler.
+     */
+    public RntbdOperationHandler lookup(final int resourceType, final int operationType) {
+        return resourceType >= 0 && resourceType < RESOURCE_TYPE_COUNT
+                && operationType >= 0 && operationType < OPERATION_TYPE_COUNT
+                ? this.handlers[resourceType][operationType]
+                : this.fallback;
+    }
+
+    /**
+     * Registers the handler of requests with the given resource type and operation type.
+     *
+     * @return this registry.
+     * @throws IllegalStateException if a handler is already registered for them.
+     */
+    public RntbdOperationRegistry register(
+            final RntbdResourceType resourceType,
+            final RntbdOperationType operationType,
+            final RntbdOperationHandler handler) {
+
+        checkNotNull(handler, "expected non-null handler");
+
+        final RntbdOperationHandler[] row = this.handlers[resourceType.id()];
+        checkState(row[operationType.id()] == this.fallback, "handler already registered for %s %s", resourceType, operationType);
+        row[operationType.id()] = handler;
+
+        return this;
+    }
+
+    /**
+     * Registers a {@link RntbdOperationHandler.Synchronous synchronous} handler.
+     *
+     * @return this registry.
+     * @throws IllegalStateException if a handler is already registered for them.
+     */
+    public RntbdOperationRegistry register(
+            final RntbdResourceType resourceType,
+            final RntbdOperationType operationType,
+            final RntbdOperationHandler.Synchronous handler) {
+
+        return this.register(resourceType, operationType, (RntbdOperationHandler) handler);
+    }
+
+    // endregion
+}
@@ -0,0 +1,600 @@
+package rntbd;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.ssl.SslContext;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import io.netty.util.concurrent.FastThreadLocal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rntbd.RntbdConstants.RntbdContextRequestHeader;
+import rntbd.RntbdConstants.RntbdOperationType;
+import rntbd.RntbdConstants.RntbdResourceType;
+import rntbd.RntbdConstants.RntbdResponseHeader;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.lenientFormat;
+
+/**
+ * Reverse proxy that forwards RNTBD requests to backend servers.
+ * <p>
+ * Each event loop keeps its own pool of long-lived connections to the backends, registered on that event loop, so a
+ * request is forwarded and its response written back without leaving the thread that read it. Pooled connections are
+ * shared by all client connections of the event loop and multiplexed: each carries many requests in flight. A
+ * forwarded request gets a TransportRequestID unique on its backend connection; the response with that ID is matched
+ * to the client request, given back the ID of the client and written back.
+ * <p>
+ * Requests and responses are forwarded as received, with only the TransportRequestID rewritten in place: headers and
+ * payloads are neither decoded nor copied. Connection (context) requests are answered by the proxy, and each backend
+ * connection negotiates its own context when it is opened. Backends are picked round robin.
+ * <p>
+ * Responses are written back as soon as they arrive, without going through the {@link RntbdLatencyWheel}: they
+ * already carry the latency of the backend. Requests fail with status 503 when they are in flight on a backend
+ * connection that closes or have waited longer than the request timeout.
+ */
+public final class RntbdProxy {
+
+    // region Fields
+
+    private static final Logger logger = LoggerFactory.getLogger(RntbdProxy.class);
+
+    private static final int RESPONSE_HEADER_LENGTH = Integer.BYTES  // length
+            + Integer.BYTES  // status
+            + 2 * Long.BYTES;  // activityId
+
+    private static final ByteBuf contextRequest = newContextRequest();
+
+    private final List<InetSocketAddress> backends;
+    private final int connectionCount;
+    private final long requestTimeoutNanos;
+    private final Class<? extends Channel> channelClass;
+    private final SslContext sslContext;
+    private final FastThreadLocal<Pool> pools = new FastThreadLocal<>();
+
+    // endregion
+
+    /**
+     * Creates a proxy. Backend connections are opened on first use.
+     *
+     * @param backends the backend endpoints.
+     * @param connectionsPerBackend the number of connections to each backend per event loop.
+     * @param requestTimeoutMillis how long a request may wait for its response before it fails; {@code 0} for no
+     * timeout.
+     * @param channelClass the class of backend connections, matching the transport of the event loops.
+     * @param sslContext the client context of backend connections, or {@code null} for plaintext.
+     */
+    public RntbdProxy(
+            final List<InetSocketAddress> backends,
+            final int connectionsPerBackend,
+            final int requestTimeoutMillis,
+            final Class<? extends Channel> channelClass,
+            final SslContext sslContext) {
+
+        checkArgument(!backends.isEmpty(), "expected at least one backend");
+        checkArgument(connectionsPerBackend > 0, "expected positive connections per backend, not %s", connectionsPerBackend);
+        checkArgument(requestTimeoutMillis >= 0, "expected non-negative request timeout, not %s", requestTimeoutMillis);
+
+        this.backends = new ArrayList<>(backends);
+        this.connectionCount = connectionsPerBackend * backends.size();
+        this.requestTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(requestTimeoutMillis);
+        this.channelClass = channelClass;
+        this.sslContext = sslContext;
+    }
+
+    // region Methods
+
+    /**
+     * Returns a new registry that answers connection requests and forwards all others.
+     */
+    public RntbdOperationRegistry newRegistry() {
+        return new RntbdOperationRegistry(this::forward)
+                .register(RntbdResourceType.Connection, RntbdOperationType.Connection, EchoOperationHandlers::connect);
+    }
+
+    private void forward(final ChannelHandlerContext context, final RntbdRequest request) {
+
+        Pool pool = this.pools.get();
+
+        if (pool == null) {
+            pool = new Pool(context.channel().eventLoop());
+            this.pools.set(pool);
+        }
+
+        pool.next().forward(context, request);
+    }
+
+    /**
+     * Writes the response to {@code request}, which may already be released, on the event loop of {@code context}.
+     * <p>
+     * Unlike {@link RntbdOperationHandler#respond} this does not schedule the response on the latency wheel.
+     */
+    private static void respond(final ChannelHandlerContext context, final RntbdRequest request, final IRntbdResponse response) {
+        RntbdTrace.request(RntbdTrace.Event.RESPONDED, context.channel(), request);
+        context.writeAndFlush(response, context.voidPromise());
+    }
+
+    /**
+     * Returns the context request sent on each new backend connection.
+     */
+    private static ByteBuf newContextRequest() {
+
+        final byte[] clientVersion = "1.0".getBytes(StandardCharsets.US_ASCII);
+        final byte[] userAgent = "RntbdProxy".getBytes(StandardCharsets.US_ASCII);
+        final ByteBuf buffer = Unpooled.buffer();
+
+        buffer.writeIntLE(0)  // length, set below
+                .writeShortLE(RntbdResourceType.Connection.id())
+                .writeShortLE(RntbdOperationType.Connection.id());
+
+        RntbdUUID.encode(RntbdUUID.EMPTY, buffer);
+
+        buffer.writeShortLE(RntbdContextRequestHeader.ProtocolVersion.id())
+                .writeByte(RntbdTokenType.ULong.id())
+                .writeIntLE(RntbdConstants.CURRENT_PROTOCOL_VERSION)
+                .writeShortLE(RntbdContextRequestHeader.ClientVersion.id())
+                .writeByte(RntbdTokenType.SmallString.id())
+                .writeByte(clientVersion.length)
+                .writeBytes(clientVersion)
+                .writeShortLE(RntbdContextRequestHeader.UserAgent.id())
+                .writeByte(RntbdTokenType.SmallString.id())
+                .writeByte(userAgent.length)
+                .writeBytes(userAgent);
+
+        buffer.setIntLE(0, buffer.writerIndex());
+        return Unpooled.unreleasableBuffer(buffer.asReadOnly());
+    }
+
+    // endregion
+
+    // region Types
+
+    /**
+     * The backend connections of one event loop.
+     * <p>
+     * Forwarded requests are written as they are read and flushed once per run of the event loop, by this task, so
+     * that the requests read from all client connections in one run leave in one write per backend connection.
+     * Requests that time out are failed by a periodic sweep of the connections.
+     */
+    private final class Pool implements Runnable {
+
+        private final EventLoop eventLoop;
+        private final Connection[] connections;
+        private final List<Connection> unflushed = new ArrayList<>();
+        private int next;
+
+        Pool(final EventLoop eventLoop) {
+
+            this.eventLoop = eventLoop;
+            this.connections = new Connection[RntbdProxy.this.connectionCount];
+
+            final long timeout = RntbdProxy.this.requestTimeoutNanos;
+
+            if (timeout > 0) {
+                // Requests fail between one and one and a quarter timeouts after they were forwarded
+                final long period = Math.max(timeout / 4, TimeUnit.MILLISECONDS.toNanos(1));
+                eventLoop.scheduleAtFixedRate(this::expire, period, period, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        /**
+         * Returns the next connection round robin, opening it if it is not open yet or was closed.
+         */
+        Connection next() {
+
+            final int index = this.next;
+            this.next = index + 1 == this.connections.length ? 0 : index + 1;
+
+            Connection connection = this.connections[index];
+
+            if (connection == null || connection.closed) {
+                final InetSocketAddress backend = RntbdProxy.this.backends.get(index % RntbdProxy.this.backends.size());
+                connection = new Connection(this, backend);
+                this.connections[index] = connection;
+            }
+
+            return connection;
+        }
+
+        void flushLater(final Connection connection) {
+            if (this.unflushed.isEmpty()) {
+                this.eventLoop.execute(this);
+            }
+            this.unflushed.add(connection);
+        }
+
+        private void expire() {
+
+            final long forwardedBefore = System.nanoTime() - RntbdProxy.this.requestTimeoutNanos;
+
+            for (final Connection connection : this.connections) {
+                if (connection != null) {
+                    connection.expire(forwardedBefore);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            for (final Connection connection : this.unflushed) {
+                connection.unflushed = false;
+                connection.channel.flush();
+            }
+            this.unflushed.clear();
+        }
+    }
+
+    /**
+     * A multiplexed backend connection and the decoder of its responses. Only used on the event loop of its pool.
+     */
+    private final class Connection extends ByteToMessageDecoder {
+
+        private final Pool pool;
+        private final InetSocketAddress backend;
+        private final Channel channel;
+
+        private final IntObjectHashMap<Pending> inFlight = new IntObjectHashMap<>();
+        private final ArrayDeque<ByteBuf> unsent = new ArrayDeque<>();  // written once the context is negotiated
+
+        private boolean negotiated;
+        private boolean closed;
+        private boolean unflushed;
+        private int nextId;
+
+        Connection(final Pool pool, final InetSocketAddress backend) {
+
+            this.pool = pool;
+            this.backend = backend;
+
+            final SslContext sslContext = RntbdProxy.this.sslContext;
+
+            this.channel = new Bootstrap()
+                    .group(pool.eventLoop)
+                    .channel(RntbdProxy.this.channelClass)
+                    .option(ChannelOption.SO_KEEPALIVE, true)
+                    .option(ChannelOption.TCP_NODELAY, true)
+                    .handler(new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(final Channel channel) {
+                            if (sslContext != null) {
+                                channel.pipeline().addLast(sslContext.newHandler(channel.alloc(), backend.getHostString(), backend.getPort()));
+                            }
+                            channel.pipeline().addLast(Connection.this);
+                        }
+                    })
+                    .connect(backend)
+                    .addListener(future -> {
+                        if (!future.isSuccess()) {
+                            this.fail(future.cause());
+                        }
+                    })
+                    .channel();
+        }
+
+        /**
+         * Forwards {@code request} under a new TransportRequestID and releases it.
+         */
+        void forward(final ChannelHandlerContext context, final RntbdRequest request) {
+
+            final int id = this.nextId++;
+            final ByteBuf frame;
+
+            try {
+                frame = request.retainedFrame(id & 0xFFFFFFFFL);
+            } finally {
+                ReferenceCountUtil.release(request);
+            }
+
+            if (frame == null) {
+                respond(context, request, EchoOperationHandlers.badRequest(request));
+                return;
+            }
+
+            this.inFlight.put(id, new Pending(context, request));
+
+            if (!this.negotiated) {
+                this.unsent.add(frame);
+                return;
+            }
+
+            this.channel.write(frame, this.channel.voidPromise());
+
+            if (!this.unflushed) {
+                this.unflushed = true;
+                this.pool.flushLater(this);
+            }
+        }
+
+        @Override
+        public void channelActive(final ChannelHandlerContext context) throws Exception {
+            context.writeAndFlush(contextRequest.duplicate(), context.voidPromise());
+            super.channelActive(context);
+        }
+
+        @Override
+        public void channelInactive(final ChannelHandlerContext context) throws Exception {
+            super.channelInactive(context);
+            this.fail(new ClosedChannelException());
+        }
+
+        @Override
+        public void exceptionCaught(final ChannelHandlerContext context, final Throwable cause) {
+            logger.warn("[backend: {}] closing connection: {}", this.backend, cause.toString());
+            context.close();
+        }
+
+        /**
+         * Decodes the response that starts at the {@code readerIndex} of {@code in} and writes it back to its client.
+         * The first response of a connection is the response to its context request.
+         */
+        @Override
+        protected void decode(final ChannelHandlerContext context, final ByteBuf in, final List<Object> out) {
+
+            if (in.readableBytes() < Integer.BYTES) {
+                return;
+            }
+
+            final int start = in.readerIndex();
+            final long length = in.getUnsignedIntLE(start);
+
+            if (length < RESPONSE_HEADER_LENGTH || length > RntbdRequestDecoder.MAX_FRAME_LENGTH) {
+                throw new CorruptedFrameException(lenientFormat("frame length: %s", length));
+            }
+
+            if (in.readableBytes() < length) {
+                return;
+            }
+
+            if (!this.negotiated) {
+                this.negotiate(context, in.getIntLE(start + Integer.BYTES));
+                in.skipBytes((int) length);
+                return;
+            }
+
+            // Find the payload flag and the TransportRequestID among the headers
+            final int end = start + (int) length;
+            boolean payloadPresent = false;
+            int idOffset = 0;
+
+            in.readerIndex(start + RESPONSE_HEADER_LENGTH);
+
+            try {
+                while (in.readerIndex() < end) {
+
+                    final int id = in.readUnsignedShortLE();
+                    final RntbdTokenType type = RntbdTokenType.fromId(in.readByte());
+
+                    if (type == null) {
+                        throw new CorruptedFrameException(lenientFormat("token type of header %s", id));
+                    }
+
+                    if (id == RntbdResponseHeader.PayloadPresent.id() && type == RntbdTokenType.Byte) {
+                        payloadPresent = in.getByte(in.readerIndex()) != 0;
+                    } else if (id == RntbdResponseHeader.TransportRequestID.id() && type == RntbdTokenType.ULong) {
+                        idOffset = in.readerIndex();
+                    }
+
+                    type.codec().skip(in);
+
+                    if (in.readerIndex() > end) {
+                        throw new CorruptedFrameException(lenientFormat("header %s runs past the end of its frame", id));
+                    }
+                }
+            } finally {
+                in.readerIndex(start);
+            }
+
+            if (idOffset == 0) {
+                throw new CorruptedFrameException("response without TransportRequestID");
+            }
+
+            int total = (int) length;
+
+            if (payloadPresent) {
+                if (in.readableBytes() < total + Integer.BYTES) {
+                    return;
+                }
+
+                final int payloadLength = in.getIntLE(start + total);
+                if (payloadLength < 0 || payloadLength > RntbdRequestDecoder.MAX_FRAME_LENGTH) {
+                    throw new CorruptedFrameException(lenientFormat("payload length: %s", payloadLength));
+                }
+
+                total += Integer.BYTES + payloadLength;
+                if (in.readableBytes() < total) {
+                    return;
+                }
+            }
+
+            final Pending pending = this.inFlight.remove(in.getIntLE(idOffset));
+
+            if (pending == null) {
+                // Most likely the response to a request that timed out
+                logger.debug("[backend: {}] dropping response to unknown TransportRequestID {}", this.backend, in.getUnsignedIntLE(idOffset));
+                in.skipBytes(total);
+                return;
+            }
+
+            in.setIntLE(idOffset, (int) pending.request.transportRequestId);
+
+            final ForwardedResponse response = new ForwardedResponse(
+                    in.retainedSlice(start, total),
+                    payloadPresent ? (int) length + Integer.BYTES : (int) length);
+
+            in.skipBytes(total);
+            respond(pending.context, pending.request, response);
+        }
+
+        private void negotiate(final ChannelHandlerContext context, final int status) {
+
+            if (status != 200) {
+                logger.warn("[backend: {}] context negotiation failed with status {}", this.backend, status);
+                context.close();
+                return;
+            }
+
+            this.negotiated = true;
+
+            for (ByteBuf frame = this.unsent.poll(); frame != null; frame = this.unsent.poll()) {
+                context.write(frame, context.voidPromise());
+            }
+
+            context.flush();
+        }
+
+        /**
+         * Closes this connection for new requests and fails those in flight.
+         */
+        private void fail(final Throwable cause) {
+
+            if (this.closed) {
+                return;
+            }
+
+            this.closed = true;
+
+            if (!this.inFlight.isEmpty()) {
+                logger.warn("[backend: {}] failing {} requests in flight: {}", this.backend, this.inFlight.size(), cause.toString());
+            }
+
+            for (ByteBuf frame = this.unsent.poll(); frame != null; frame = this.unsent.poll()) {
+                frame.release();
+            }
+
+            for (final Pending pending : this.inFlight.values()) {
+                respond(pending.context, pending.request, EchoOperationHandlers.serviceUnavailable(pending.request));
+            }
+
+            this.inFlight.clear();
+        }
+
+        /**
+         * Fails the requests in flight that were forwarded before {@code forwardedBefore}, a {@link System#nanoTime}.
+         */
+        void expire(final long forwardedBefore) {
+
+            int count = 0;
+
+            for (final Iterator<IntObjectMap.PrimitiveEntry<Pending>> entries = this.inFlight.entries().iterator(); entries.hasNext(); ) {
+
+                final Pending pending = entries.next().value();
+
+                if (pending.forwardedNanos - forwardedBefore < 0) {
+                    entries.remove();
+                    respond(pending.context, pending.request, EchoOperationHandlers.serviceUnavailable(pending.request));
+                    count++;
+                }
+            }
+
+            if (count > 0) {
+                logger.warn("[backend: {}] {} requests timed out", this.backend, count);
+            }
+        }
+    }
+
+    /**
+     * A forwarded request waiting for its response. The request is released; only its fields are used.
+     */
+    private static final class Pending {
+
+        final ChannelHandlerContext context;
+        final RntbdRequest request;
+        final long forwardedNanos;
+
+        Pending(final ChannelHandlerContext context, final RntbdRequest request) {
+            this.context = context;
+            this.request = request;
+            this.forwardedNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * A backend response written back as received. The encoder copies its frame and headers and passes its payload
+     * on as a slice of the backend input.
+     */
+    private static final class ForwardedResponse implements IRntbdResponse, ReferenceCounted {
+
+        private final ByteBuf message;  // the whole response
+        private final int messageLength;  // frame and headers, and the payload length if a payload is present
+
+        ForwardedResponse(final ByteBuf message, final int messageLength) {
+            this.message = message;
+            this.messageLength = messageLength;
+        }
+
+        @Override
+        public void encode(final ByteBuf out) {
+            out.writeBytes(this.message, this.message.readerIndex(), this.messageLength);
+        }
+
+        @Override
+        public int getMessageLength() {
+            return this.messageLength;
+        }
+
+        @Override
+        public ByteBuf getPayload() {
+            return this.message.slice(this.message.readerIndex() + this.messageLength, this.message.readableBytes() - this.messageLength);
+        }
+
+        @Override
+        public int refCnt() {
+            return this.message.refCnt();
+        }
+
+        @Override
+        public ForwardedResponse retain() {
+            this.message.retain();
+            return this;
+        }
+
+        @Override
+        public ForwardedResponse retain(final int increment) {
+            this.message.retain(increment);
+            return this;
+        }
+
+        @Override
+        public ForwardedResponse touch() {
+            this.message.touch();
+            return this;
+        }
+
+        @Override
+        public ForwardedResponse touch(final Object hint) {
+            this.message.touch(hint);
+            return this;
+        }
+
+        @Override
+        public boolean release() {
+            return this.message.release();
+        }
+
+        @Override
+        public boolean release(final int decrement) {
+            return this.message.release(decrement);
+        }
+    }
+
+    // endregion
+}
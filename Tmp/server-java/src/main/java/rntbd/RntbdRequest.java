@@ -4,50 +4,256 @@
 package rntbd;
 
 import io.netty.buffer.ByteBuf;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.ReferenceCounted;
 
 import java.util.UUID;
 
-public final class RntbdRequest {
-    private final static Logger logger = LoggerFactory.getLogger(RntbdRequest.class);
+import static com.google.common.base.Strings.lenientFormat;
+
+/**
+ * A decoded RNTBD request.
+ * <p>
+ * The request holds a retained slice of the decoder's cumulation buffer covering its frame and payload. Its headers
+ * and payload are views into that slice, so the request must be released once it has been processed.
+ */
+public final class RntbdRequest implements ReferenceCounted {
+
+    static final int HEADER_LENGTH = Integer.BYTES  // length
+            + 2 * Short.BYTES  // resource type, operation type
+            + 2 * Long.BYTES;  // activityId
 
     public final int resourceTypeInt;
     public final int operationTypeInt;
     public final UUID activityId;
     public final long transportRequestId;
 
+    private final ByteBuf frame;
+    private final RntbdRequestHeaders headers;
+    private final ByteBuf payload;
+
     private RntbdRequest(final int resourceType,
                          final int operationType,
                          final UUID activityId,
-                         final long transactionalId) {
+                         final long transactionalId,
+                         final ByteBuf frame,
+                         final RntbdRequestHeaders headers,
+                         final ByteBuf payload) {
 
         this.resourceTypeInt = resourceType;
         this.operationTypeInt = operationType;
         this.activityId = activityId;
         this.transportRequestId = transactionalId;
+        this.frame = frame;
+        this.headers = headers;
+        this.payload = payload;
+    }
+
+    // region Accessors
+
+    /**
+     * Returns the request headers, or {@code null} for a connection (context) request.
+     */
+    RntbdRequestHeaders getHeaders() {
+        return this.headers;
+    }
+
+    /**
+     * Returns the value of a request header of type {@code String}, or {@code null} if it is absent.
+     */
+    public String getString(final RntbdConstants.RntbdRequestHeader header) {
+        final RntbdToken token = this.headers == null ? null : this.headers.get(header);
+        return token == null || !token.isPresent() ? null : token.getValue(String.class);
     }
 
-    public static RntbdRequest decode(final ByteBuf in) {
-        final int length = in.getIntLE(in.readerIndex());
-        final int resourceTypeInt = in.getUnsignedShortLE(in.readerIndex() + Integer.BYTES);
-        final int operationTypeInt = in.getUnsignedShortLE(in.readerIndex() + Integer.BYTES + 2); // UINT (resource type)
+    /**
+     * Returns the value of a request header of type {@code Bytes}, or {@code null} if it is absent.
+     */
+    public byte[] getBytes(final RntbdConstants.RntbdRequestHeader header) {
+        final RntbdToken token = this.headers == null ? null : this.headers.get(header);
+        return token == null || !token.isPresent() ? null : token.getValue(byte[].class);
+    }
+
+    /**
+     * Returns the request payload, or an empty buffer if the request carries none.
+     */
+    public ByteBuf getPayload() {
+        return this.payload;
+    }
+
+    /**
+     * Returns the request as it was received, frame and payload, with its TransportRequestID replaced.
+     * <p>
+     * The ID is rewritten in place, so the request must not be read for it afterwards; {@link #transportRequestId}
+     * keeps the received value. The returned buffer holds its own reference. It is a slice, whose capacity ends with
+     * the request, so that a write that coalesces buffers cannot append to it over the requests that follow.
+     *
+     * @param transportRequestId the new TransportRequestID.
+     * @return the rewritten request, or {@code null} if the request has no TransportRequestID.
+     */
+    ByteBuf retainedFrame(final long transportRequestId) {
+
+        final int offset = this.headers == null ? 0 : this.headers.offset(RntbdConstants.RntbdRequestHeader.TransportRequestID);
+
+        if (offset == 0) {
+            return null;
+        }
+
+        this.frame.setIntLE(HEADER_LENGTH + offset, (int) transportRequestId);
+        return this.frame.retainedSlice();
+    }
+
+    // endregion
+
+    // region Methods
+
+    /**
+     * Returns the length of the request that starts at the {@code readerIndex} of {@code in}: its frame and, if it
+     * carries a payload, the length-prefixed payload.
+     * <p>
+     * The caller guarantees that the length-prefixed frame is readable. Headers are scanned for the
+     * {@code PayloadPresent} flag in place, without being decoded. {@code in} is left untouched.
+     *
+     * @param in the decoder cumulation buffer.
+     * @return the length of the request, or {@code -1} if the payload length is not readable yet.
+     */
+    static int getRequestLength(final ByteBuf in) {
+
+        final int start = in.readerIndex();
+        final int length = in.getIntLE(start);
+
+        if (in.getUnsignedShortLE(start + Integer.BYTES) == 0) {
+            return length;  // connection (context) request: its headers are not request headers
+        }
+
+        if (!isPayloadPresent(in, start + HEADER_LENGTH, start + length)) {
+            return length;
+        }
+
+        if (in.readableBytes() < length + Integer.BYTES) {
+            return -1;
+        }
+
+        final int payloadLength = in.getIntLE(start + length);
+        if (payloadLength < 0 || payloadLength > RntbdRequestDecoder.MAX_FRAME_LENGTH) {
+            throw new CorruptedFrameException(lenientFormat("payload length: %s", payloadLength));
+        }
+
+        return length + Integer.BYTES + payloadLength;
+    }
 
-        final int activityIdPos = in.readerIndex() + 8;
-        in.readerIndex(activityIdPos);
-        UUID activityUuid = RntbdUUID.decode(in);
-        logger.info("[msg-id: {}] ServerRntbdRequest.decode length: {} resourceType: {} operationType: {} activityId: {}", in.memoryAddress(), length, resourceTypeInt, operationTypeInt, activityUuid);
+    /**
+     * Decodes the request that starts at the {@code readerIndex} of {@code in} and advances the {@code readerIndex}
+     * past it.
+     *
+     * @param in the decoder cumulation buffer.
+     * @param requestLength the length of the request, as returned by {@link #getRequestLength}; it is readable.
+     * @return the decoded request.
+     */
+    static RntbdRequest decode(final ByteBuf in, final int requestLength) {
 
-        long transactionalId = 0; // not-defined
-        if (resourceTypeInt != 0) {
+        final int start = in.readerIndex();
+        final int length = in.getIntLE(start);
+        final int resourceTypeInt = in.getUnsignedShortLE(start + Integer.BYTES);
+        final int operationTypeInt = in.getUnsignedShortLE(start + Integer.BYTES + Short.BYTES);
+        final UUID activityUuid = RntbdUUID.decode(in, start + Integer.BYTES + 2 * Short.BYTES);
+
+        final ByteBuf frame = in.retainedSlice(start, requestLength);
+        in.skipBytes(requestLength);
+
+        if (resourceTypeInt == 0) {
             // HACK: RntbdToken types are overloaded (ex: ProtocolVersion in connect vs payloadpresent in request)
-            in.readerIndex(activityIdPos + 16);
-            RntbdRequestHeaders requestHeaders = RntbdRequestHeaders.decode(in);
-            transactionalId = (long)requestHeaders.get(RntbdConstants.RntbdRequestHeader.TransportRequestID).getValue();
+            return new RntbdRequest(resourceTypeInt, operationTypeInt, activityUuid, 0, frame, null, Unpooled.EMPTY_BUFFER);
+        }
+
+        try {
+            final RntbdRequestHeaders requestHeaders = RntbdRequestHeaders.decode(frame.slice(HEADER_LENGTH, length - HEADER_LENGTH));
+            final ByteBuf payload = requestLength > length
+                    ? frame.slice(length + Integer.BYTES, requestLength - length - Integer.BYTES)
+                    : Unpooled.EMPTY_BUFFER;
+            final long transactionalId = (long)requestHeaders.get(RntbdConstants.RntbdRequestHeader.TransportRequestID).getValue();
+            return new RntbdRequest(resourceTypeInt, operationTypeInt, activityUuid, transactionalId, frame, requestHeaders, payload);
+        } catch (final RuntimeException error) {
+            frame.release();
+            throw error;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the request headers between {@code start} and {@code end} in {@code in} set the
+     * {@code PayloadPresent} flag.
+     */
+    private static boolean isPayloadPresent(final ByteBuf in, final int start, final int end) {
+
+        final RntbdConstants.RntbdRequestHeader[] ids = RntbdConstants.RntbdRequestHeader.ids;
+        final int readerIndex = in.readerIndex();
+
+        try {
+            in.readerIndex(start);
+
+            while (in.readerIndex() < end) {
+
+                final int id = in.readUnsignedShortLE();
+                final RntbdTokenType type = RntbdTokenType.fromId(in.readByte());
+                final RntbdConstants.RntbdRequestHeader header = id < ids.length ? ids[id] : null;
+
+                if (header == RntbdConstants.RntbdRequestHeader.PayloadPresent) {
+                    return in.getByte(in.readerIndex()) != 0x00;
+                }
+
+                (header == null ? type : header.type()).codec().skip(in);
+
+                if (in.readerIndex() > end) {
+                    throw new CorruptedFrameException(lenientFormat("header %s runs past the end of its frame", id));
+                }
+            }
+
+            return false;
+
+        } finally {
+            in.readerIndex(readerIndex);
         }
+    }
+
+    @Override
+    public int refCnt() {
+        return this.frame.refCnt();
+    }
+
+    @Override
+    public boolean release() {
+        return this.frame.release();
+    }
+
+    @Override
+    public boolean release(final int decrement) {
+        return this.frame.release(decrement);
+    }
 
-        in.readerIndex(length);
-        in.discardReadBytes();
-        return new RntbdRequest(resourceTypeInt, operationTypeInt, activityUuid, transactionalId);
+    @Override
+    public RntbdRequest retain() {
+        this.frame.retain();
+        return this;
     }
-}
\ No newline at end of file
+
+    @Override
+    public RntbdRequest retain(final int increment) {
+        this.frame.retain(increment);
+        return this;
+    }
+
+    @Override
+    public RntbdRequest touch() {
+        this.frame.touch();
+        return this;
+    }
+
+    @Override
+    public RntbdRequest touch(final Object hint) {
+        this.frame.touch(hint);
+        return this;
+    }
+
+    // endregion
+}
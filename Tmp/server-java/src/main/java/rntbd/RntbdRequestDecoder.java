@@ -6,13 +6,30 @@ package rntbd;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
 
 import java.util.List;
 
+import static com.google.common.base.Strings.lenientFormat;
+
+/**
+ * Frames and decodes RNTBD requests in a single pass over the cumulation buffer.
+ * <p>
+ * Requests are parsed in place and handed out as retained slices of the cumulation, so there is no per-frame copy.
+ * The price is paid while requests are outstanding: {@link ByteToMessageDecoder} cannot discard the bytes they
+ * reference, and when the next read does not fit the shared cumulation it is merged into a copy of it. Requests
+ * should therefore be released as soon as they have been responded to.
+ * <p>
+ * The length of the request at the head of the cumulation is worked out once, when its frame has arrived, and
+ * remembered; its headers are decoded once, when its payload has arrived too.
+ */
 public final class RntbdRequestDecoder extends ByteToMessageDecoder {
-    private final static Logger logger = LoggerFactory.getLogger(RntbdRequestDecoder.class);
+
+    static final int MAX_FRAME_LENGTH = 4 * 1024 * 1024;
+
+    // Length of the request at the head of the cumulation, frame and payload, or zero if not yet known
+    private int requestLength;
 
     @Override
     protected void decode(
@@ -20,11 +37,43 @@ public final class RntbdRequestDecoder extends ByteToMessageDecoder {
             final ByteBuf in,
             final List<Object> out) throws Exception {
 
-        logger.info("[cid: 0x{} msg-id: {}] ", context.channel().id(), in.memoryAddress());
+        if (this.requestLength == 0) {
+
+            if (in.readableBytes() < Integer.BYTES) {
+                return;
+            }
+
+            final long length = in.getUnsignedIntLE(in.readerIndex());
+
+            if (length < RntbdRequest.HEADER_LENGTH) {
+                throw new CorruptedFrameException(lenientFormat("frame length: %s", length));
+            }
+
+            if (length > MAX_FRAME_LENGTH) {
+                throw new TooLongFrameException(lenientFormat("frame length %s exceeds %s", length, MAX_FRAME_LENGTH));
+            }
+
+            if (in.readableBytes() < length) {
+                return;
+            }
+
+            final int requestLength = RntbdRequest.getRequestLength(in);
+            if (requestLength < 0) {
+                return;  // payload length not received yet
+            }
+
+            this.requestLength = requestLength;
+        }
+
+        if (in.readableBytes() < this.requestLength) {
+            return;  // payload not fully received yet
+        }
+
+        final RntbdRequest request = RntbdRequest.decode(in, this.requestLength);
+        this.requestLength = 0;
 
-        final RntbdRequest request = RntbdRequest.decode(in);
-        logger.info("[cid: 0x{} msg-id: {}] channelRead resourceType: {} operationType: {} decoded-msg-id: {}", context.channel().id(), in.memoryAddress(), request.resourceTypeInt, request.operationTypeInt, request.hashCode());
+        RntbdTrace.request(RntbdTrace.Event.DECODED, context.channel(), request);
 
         out.add(request);
     }
-}
\ No newline at end of file
+}
@@ -13,7 +13,7 @@ final class RntbdRequestHeaders extends RntbdTokenStream<RntbdConstants.RntbdReq
     // region Constructors
 
     private RntbdRequestHeaders(ByteBuf in) {
-        super(RntbdConstants.RntbdRequestHeader.set, RntbdConstants.RntbdRequestHeader.map, in);
+        super(RntbdConstants.RntbdRequestHeader.set, RntbdConstants.RntbdRequestHeader.ids, RntbdConstants.RntbdRequestHeader.requiredBits, RntbdConstants.RntbdRequestHeader.requiredMask, in);
     }
 
     // endregion
@@ -25,6 +25,11 @@ final class RntbdRequestHeaders extends RntbdTokenStream<RntbdConstants.RntbdReq
         return RntbdRequestHeaders.decode(metadata);
     }
 
+    boolean isPayloadPresent() {
+        final RntbdToken payloadPresent = this.get(RntbdConstants.RntbdRequestHeader.PayloadPresent);
+        return payloadPresent.isPresent() && payloadPresent.getValue(Byte.class) != 0x00;
+    }
+
     // endregion
 }
 
@@ -9,15 +9,14 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
-import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.Recycler;
 import io.netty.util.ReferenceCounted;
 import io.netty.util.ResourceLeakDetector;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
@@ -32,67 +31,72 @@ public final class RntbdResponse implements ReferenceCounted, IRntbdResponse {
     private static final AtomicIntegerFieldUpdater<RntbdResponse> REFERENCE_COUNT =
             AtomicIntegerFieldUpdater.newUpdater(RntbdResponse.class, "referenceCount");
 
-    @JsonSerialize(using = PayloadSerializer.class)
-    private final ByteBuf content;
+    // Instances are pooled per thread and recycled, with their headers, when the last reference is released
+    private static final Recycler<RntbdResponse> recycler = new Recycler<RntbdResponse>() {
+        @Override
+        protected RntbdResponse newObject(final Handle<RntbdResponse> handle) {
+            return new RntbdResponse(handle);
+        }
+    };
 
-    @JsonProperty
-    private final RntbdResponseStatus frame;
+    private final Recycler.Handle<RntbdResponse> handle;
+
+    private UUID activityId;
+
+    @JsonSerialize(using = PayloadSerializer.class)
+    private ByteBuf content;
 
     @JsonProperty
-    private final RntbdResponseHeaders headers;
+    private RntbdResponseHeaders headers;
 
-    private final ByteBuf message;
+    private int length;
 
     @JsonProperty
-    private final int messageLength;
+    private int messageLength;
 
     @JsonProperty
     private volatile int referenceCount;
 
+    private HttpResponseStatus status;
+
     // endregion
 
     // region Constructors
 
+    private RntbdResponse(final Recycler.Handle<RntbdResponse> handle) {
+        this.handle = handle;
+    }
+
     /**
-     * Initializes a new {@link RntbdResponse} instance.
-     * <p>
-     * This method is provided for testing purposes only. It should not be used in product code.
+     * Returns a pooled {@link RntbdResponse} instance with a reference count of {@code 1}.
      *
      * @param activityId an activity ID
      * @param statusCode a response status code.
-     * @param map a collection of response headers.
-     * @param content a body to be copied to the response.
+     * @param headers response headers obtained from {@link RntbdResponseHeaders#newInstance}; recycled with the
+     * response.
+     * @param content a body owned by the response from now on; it is released with the response.
+     *
+     * @return a new response.
      */
-    public RntbdResponse(
+    public static RntbdResponse newInstance(
             final UUID activityId,
             final int statusCode,
-            final Map<String, String> map,
+            final RntbdResponseHeaders headers,
             final ByteBuf content) {
 
-        this.headers = RntbdResponseHeaders.fromMap(map, content.readableBytes() > 0);
-        this.message = Unpooled.EMPTY_BUFFER;
-        this.content = content.copy();
+        checkArgument(headers.isPayloadPresent() || content.readableBytes() == 0, "unexpected content");
 
-        final HttpResponseStatus status = HttpResponseStatus.valueOf(statusCode);
-        final int length = RntbdResponseStatus.LENGTH + this.headers.computeLength();
+        final RntbdResponse response = recycler.get();
 
-        this.frame = new RntbdResponseStatus(length, status, activityId);
-        this.messageLength = length + this.content.writerIndex();
-        this.referenceCount = 0;
-    }
+        response.headers = headers;
+        response.content = content;
+        response.activityId = activityId;
+        response.status = HttpResponseStatus.valueOf(statusCode);
+        response.length = RntbdResponseStatus.LENGTH + headers.computeLength();
+        response.messageLength = response.hasPayload() ? response.length + Integer.BYTES : response.length;
+        response.referenceCount = 1;
 
-    private RntbdResponse(
-            final ByteBuf message,
-            final RntbdResponseStatus frame,
-            final RntbdResponseHeaders headers,
-            final ByteBuf content) {
-
-        this.message = message;
-        this.referenceCount = 0;
-        this.frame = frame;
-        this.headers = headers;
-        this.content = content;
-        this.messageLength = message.writerIndex();;
+        return response;
     }
 
     // endregion
@@ -101,7 +105,7 @@ public final class RntbdResponse implements ReferenceCounted, IRntbdResponse {
 
     @JsonIgnore
     public UUID getActivityId() {
-        return this.frame.getActivityId();
+        return this.activityId;
     }
 
     @JsonIgnore
@@ -109,19 +113,31 @@ public final class RntbdResponse implements ReferenceCounted, IRntbdResponse {
         return this.content;
     }
 
+    @JsonIgnore
+    @Override
+    public ByteBuf getPayload() {
+        return this.content;
+    }
+
     @JsonIgnore
     public RntbdResponseHeaders getHeaders() {
         return this.headers;
     }
 
     @JsonIgnore
+    @Override
     public int getMessageLength() {
         return this.messageLength;
     }
 
     @JsonIgnore
     public HttpResponseStatus getStatus() {
-        return this.frame.getStatus();
+        return this.status;
+    }
+
+    @JsonProperty
+    RntbdResponseStatus getFrame() {
+        return new RntbdResponseStatus(this.length, this.status, this.activityId);
     }
 
     @JsonIgnore
@@ -135,6 +151,8 @@ public final class RntbdResponse implements ReferenceCounted, IRntbdResponse {
 
     /**
      * Serializes the current {@link RntbdResponse response} to the given {@link ByteBuf byte buffer}.
+     * <p>
+     * The content is not written; it follows the message as a separate buffer. See {@link #getPayload()}.
      *
      * @param out the output {@link ByteBuf byte buffer}.
      */
@@ -143,15 +161,14 @@ public final class RntbdResponse implements ReferenceCounted, IRntbdResponse {
 
         final int start = out.writerIndex();
 
-        this.frame.encode(out);
+        RntbdResponseStatus.encode(this.length, this.status, this.activityId, out);
         this.headers.encode(out);
 
         final int length = out.writerIndex() - start;
-        checkState(length == this.frame.getLength());
+        checkState(length == this.length);
 
         if (this.hasPayload()) {
             out.writeIntLE(this.content.readableBytes());
-            out.writeBytes(this.content);
         } else if (this.content.readableBytes() > 0) {
             throw new IllegalStateException();
         }
@@ -219,15 +236,9 @@ public final class RntbdResponse implements ReferenceCounted, IRntbdResponse {
 
             referenceCount = referenceCount - decrease;
 
-            if (referenceCount == 0) {
-                this.content.release();
-                this.headers.release();
-                this.message.release();
-            }
-
             return referenceCount;
 
-        }) == 0;
+        }) == 0 && this.deallocate();
     }
 
     /**
@@ -250,9 +261,7 @@ public final class RntbdResponse implements ReferenceCounted, IRntbdResponse {
 
         REFERENCE_COUNT.accumulateAndGet(this, increment, (referenceCount, increase) -> {
             if (referenceCount == 0) {
-                this.content.retain();
-                this.headers.retain();
-                this.message.retain();
+                throw new IllegalReferenceCountException(0, increase);
             }
             return referenceCount + increase;
         });
@@ -265,6 +274,20 @@ public final class RntbdResponse implements ReferenceCounted, IRntbdResponse {
         return ServerRntbdObjectMapper.toString(this);
     }
 
+    private boolean deallocate() {
+
+        this.content.release();
+        this.headers.recycle();
+
+        this.activityId = null;
+        this.content = null;
+        this.headers = null;
+        this.status = null;
+
+        this.handle.recycle(this);
+        return true;
+    }
+
     /**
      * Records the current access location of this object for debugging purposes
      * <p>
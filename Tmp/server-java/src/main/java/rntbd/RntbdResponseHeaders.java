@@ -9,6 +9,7 @@ import com.google.common.collect.ImmutableMap;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.util.Recycler;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
@@ -19,6 +20,7 @@ import java.util.UUID;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 
+import static com.google.common.base.Preconditions.checkState;
 import static rntbd.RntbdConstants.RntbdResponseHeader;
 import rntbd.WFConstants.BackendHeaders;
 
@@ -128,11 +130,25 @@ class RntbdResponseHeaders extends RntbdTokenStream<RntbdResponseHeader> {
     @JsonProperty
     private final RntbdToken xpRole;
 
+    // Encoding instances are pooled per thread; tokens are kept and cleared on recycle
+    private static final Recycler<RntbdResponseHeaders> recycler = new Recycler<RntbdResponseHeaders>() {
+        @Override
+        protected RntbdResponseHeaders newObject(final Handle<RntbdResponseHeaders> handle) {
+            return new RntbdResponseHeaders(Unpooled.EMPTY_BUFFER, handle);
+        }
+    };
+
+    private final Recycler.Handle<RntbdResponseHeaders> handle;
+
     // endregion
 
-    private RntbdResponseHeaders(ByteBuf in) {
+    private RntbdResponseHeaders(final ByteBuf in) {
+        this(in, null);
+    }
 
-        super(RntbdResponseHeader.set, RntbdResponseHeader.map, in);
+    private RntbdResponseHeaders(final ByteBuf in, final Recycler.Handle<RntbdResponseHeaders> handle) {
+
+        super(RntbdResponseHeader.set, RntbdResponseHeader.ids, RntbdResponseHeader.requiredBits, RntbdResponseHeader.requiredMask, in);
 
         this.LSN = this.get(RntbdResponseHeader.LSN);
         this.collectionLazyIndexProgress = this.get(RntbdResponseHeader.CollectionLazyIndexProgress);
@@ -183,6 +199,7 @@ class RntbdResponseHeaders extends RntbdTokenStream<RntbdResponseHeader> {
         this.transportRequestID = this.get(RntbdResponseHeader.TransportRequestID);
         this.writesPerformed = this.get(RntbdResponseHeader.WritesPerformed);
         this.xpRole = this.get(RntbdResponseHeader.XPRole);
+        this.handle = handle;
     }
 
     boolean isPayloadPresent() {
@@ -225,15 +242,142 @@ class RntbdResponseHeaders extends RntbdTokenStream<RntbdResponseHeader> {
         return headers;
     }
 
-    public static RntbdResponseHeaders fromMap(final Map<String, String> map, final boolean payloadPresent) {
-
-        final RntbdResponseHeaders headers = new RntbdResponseHeaders(Unpooled.EMPTY_BUFFER);
+    /**
+     * Returns pooled, empty headers to be filled in with the typed setters below.
+     *
+     * @param payloadPresent {@code true} if the response carries a payload.
+     *
+     * @return headers that are recycled with the response that uses them.
+     */
+    public static RntbdResponseHeaders newInstance(final boolean payloadPresent) {
+        final RntbdResponseHeaders headers = recycler.get();
         headers.payloadPresent.setValue(payloadPresent);
-        headers.setValues(map);
-
         return headers;
     }
 
+    // region Typed setters
+
+    public RntbdResponseHeaders continuationToken(final String value) {
+        this.continuationToken.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders currentReplicaSetSize(final int value) {
+        this.currentReplicaSetSize.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders currentWriteQuorum(final int value) {
+        this.currentWriteQuorum.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders eTag(final String value) {
+        this.eTag.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders globalCommittedLsn(final long value) {
+        this.globalCommittedLSN.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders itemCount(final int value) {
+        this.itemCount.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders itemLocalLsn(final long value) {
+        this.itemLocalLSN.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders itemLsn(final long value) {
+        this.itemLSN.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders localLsn(final long value) {
+        this.localLSN.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders lsn(final long value) {
+        this.LSN.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders ownerFullName(final String value) {
+        this.ownerFullName.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders ownerId(final String value) {
+        this.ownerId.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders partitionKeyRangeId(final String value) {
+        this.partitionKeyRangeId.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders quorumAckedLocalLsn(final long value) {
+        this.quorumAckedLocalLSN.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders quorumAckedLsn(final long value) {
+        this.quorumAckedLSN.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders requestCharge(final double value) {
+        this.requestCharge.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders retryAfterMilliseconds(final int value) {
+        this.retryAfterMilliseconds.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders serverDateTimeUtc(final String value) {
+        this.serverDateTimeUtc.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders sessionToken(final String value) {
+        this.sessionToken.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders subStatus(final int value) {
+        this.subStatus.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders transportRequestId(final long value) {
+        this.transportRequestID.setValue(value);
+        return this;
+    }
+
+    public RntbdResponseHeaders xpRole(final int value) {
+        this.xpRole.setValue(value);
+        return this;
+    }
+
+    // endregion
+
+    /**
+     * Returns headers obtained from {@link #newInstance} to the pool of the current thread. They must not be used after.
+     */
+    void recycle() {
+        checkState(this.handle != null, "expected headers obtained from newInstance");
+        this.reset();
+        this.handle.recycle(this);
+    }
+
     public void setValues(final Map<String, String> headers) {
 
         this.mapValue(this.LSN, BackendHeaders.LSN, Long::parseLong, headers);
@@ -80,9 +80,13 @@ final class RntbdResponseStatus {
     }
 
     void encode(final ByteBuf out) {
-        out.writeIntLE(this.getLength());
-        out.writeIntLE(this.getStatusCode());
-        RntbdUUID.encode(this.getActivityId(), out);
+        encode(this.getLength(), this.getStatus(), this.getActivityId(), out);
+    }
+
+    static void encode(final int length, final HttpResponseStatus status, final UUID activityId, final ByteBuf out) {
+        out.writeIntLE(length);
+        out.writeIntLE(status.code());
+        RntbdUUID.encode(activityId, out);
     }
 
     @Override
@@ -0,0 +1,256 @@
+package rntbd;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.Recycler;
+import io.netty.util.collection.LongObjectHashMap;
+
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A response frame and header block that are encoded once and replayed for every response of the same kind.
+ * <p>
+ * Responses produced from a template differ only in {@code activityId}, {@code TransportRequestID} and payload. The
+ * encoder copies the pre-encoded block and patches those two fields at offsets found when the template was built,
+ * so it neither builds a {@link RntbdResponseHeaders} token stream nor walks its tokens per response.
+ */
+public final class RntbdResponseTemplate {
+
+    // region Fields
+
+    private static final int ACTIVITY_ID_OFFSET = Integer.BYTES + Integer.BYTES;  // length, status
+
+    private static final Object lock = new Object();
+
+    // Keyed by resource type, operation type, status code, payload presence and template id; replaced (never
+    // mutated) when a template is added so event loops read it without locking
+    private static volatile LongObjectHashMap<RntbdResponseTemplate> cache = new LongObjectHashMap<>();
+
+    private final ByteBuf encoded;
+    private final boolean payloadPresent;
+    private final int transportRequestIdOffset;
+
+    // endregion
+
+    private RntbdResponseTemplate(final ByteBuf encoded, final boolean payloadPresent, final int transportRequestIdOffset) {
+        this.encoded = encoded;
+        this.payloadPresent = payloadPresent;
+        this.transportRequestIdOffset = transportRequestIdOffset;
+    }
+
+    // region Methods
+
+    /**
+     * Returns the template for the given operation and status, encoding it from {@code headers} on first use.
+     * <p>
+     * A template is cached under every argument but {@code headers}, which cannot be compared. Callers that set
+     * different headers for the same operation and status must therefore pass different template ids.
+     *
+     * @param templateId identifies the headers set by {@code headers} among those used with the same operation and
+     * status; in the range [0, 2^21).
+     * @param resourceType the RNTBD resource type id.
+     * @param operationType the RNTBD operation type id.
+     * @param statusCode a response status code.
+     * @param payloadPresent {@code true} if responses of this kind carry a payload.
+     * @param headers sets the response headers shared by all responses of this kind; only called when the template
+     * is built.
+     *
+     * @return the cached template.
+     */
+    public static RntbdResponseTemplate get(
+            final int templateId,
+            final int resourceType,
+            final int operationType,
+            final int statusCode,
+            final boolean payloadPresent,
+            final Consumer<RntbdResponseHeaders> headers) {
+
+        final long key = key(templateId, resourceType, operationType, statusCode, payloadPresent);
+        RntbdResponseTemplate template = cache.get(key);
+
+        if (template == null) {
+            synchronized (lock) {
+                template = cache.get(key);
+                if (template == null) {
+                    template = create(statusCode, payloadPresent, headers);
+                    final LongObjectHashMap<RntbdResponseTemplate> copy = new LongObjectHashMap<>(cache.size() + 1);
+                    copy.putAll(cache);
+                    copy.put(key, template);
+                    cache = copy;
+                }
+            }
+        }
+
+        return template;
+    }
+
+    /**
+     * Creates a response from this template.
+     *
+     * @param activityId the activity ID of the request.
+     * @param transportRequestId the transport request ID of the request.
+     * @param payload the response payload, owned by the returned response; {@link Unpooled#EMPTY_BUFFER} if none.
+     *
+     * @return a new response.
+     */
+    public Response newResponse(final UUID activityId, final long transportRequestId, final ByteBuf payload) {
+        checkArgument(this.payloadPresent || payload.readableBytes() == 0, "unexpected payload");
+        return Response.newInstance(this, activityId, transportRequestId, payload);
+    }
+
+    private static RntbdResponseTemplate create(
+            final int statusCode,
+            final boolean payloadPresent,
+            final Consumer<RntbdResponseHeaders> headers) {
+
+        checkNotNull(headers, "expected non-null headers");
+
+        // Zero placeholder so that the TransportRequestID token is always encoded and can be patched
+        final RntbdResponseHeaders responseHeaders = RntbdResponseHeaders.newInstance(payloadPresent).transportRequestId(0L);
+        headers.accept(responseHeaders);
+        final int length = RntbdResponseStatus.LENGTH + responseHeaders.computeLength();
+        final RntbdResponseStatus status = new RntbdResponseStatus(length, HttpResponseStatus.valueOf(statusCode), RntbdUUID.EMPTY);
+
+        final ByteBuf encoded = Unpooled.directBuffer(length, length);
+        status.encode(encoded);
+        responseHeaders.encode(encoded);
+        checkState(encoded.readableBytes() == length);
+
+        responseHeaders.recycle();
+
+        final int offset = findValue(encoded, RntbdConstants.RntbdResponseHeader.TransportRequestID);
+        return new RntbdResponseTemplate(Unpooled.unreleasableBuffer(encoded.asReadOnly()), payloadPresent, offset);
+    }
+
+    /**
+     * Returns the index of the value of the given token in an encoded response frame.
+     */
+    private static int findValue(final ByteBuf encoded, final RntbdConstants.RntbdResponseHeader header) {
+
+        final ByteBuf in = encoded.duplicate().readerIndex(RntbdResponseStatus.LENGTH);
+
+        while (in.readableBytes() > 0) {
+            final int id = in.readUnsignedShortLE();
+            final RntbdTokenType type = RntbdTokenType.fromId(in.readByte());
+            if (id == header.id()) {
+                return in.readerIndex();
+            }
+            type.codec().skip(in);
+        }
+
+        throw new IllegalStateException(header + " not found in template");
+    }
+
+    private static long key(
+            final int templateId,
+            final int resourceType,
+            final int operationType,
+            final int statusCode,
+            final boolean payloadPresent) {
+
+        checkArgument(0 <= templateId && templateId < 1 << 21, "templateId: %s", templateId);
+        checkArgument(0 <= statusCode && statusCode < 1 << 10, "statusCode: %s", statusCode);
+
+        return (long) (resourceType & 0xFFFF) << 48
+                | (long) (operationType & 0xFFFF) << 32
+                | (long) templateId << 11
+                | (payloadPresent ? 1L << 10 : 0L)
+                | statusCode;
+    }
+
+    // endregion
+
+    // region Types
+
+    /**
+     * A response produced from a {@link RntbdResponseTemplate template}. It owns its payload.
+     * <p>
+     * Instances are pooled per thread and recycled when the last reference is released.
+     */
+    public static final class Response extends AbstractReferenceCounted implements IRntbdResponse {
+
+        private static final Recycler<Response> recycler = new Recycler<Response>() {
+            @Override
+            protected Response newObject(final Handle<Response> handle) {
+                return new Response(handle);
+            }
+        };
+
+        private final Recycler.Handle<Response> handle;
+
+        private RntbdResponseTemplate template;
+        private UUID activityId;
+        private long transportRequestId;
+        private ByteBuf payload;
+
+        private Response(final Recycler.Handle<Response> handle) {
+            this.handle = handle;
+        }
+
+        private static Response newInstance(
+                final RntbdResponseTemplate template,
+                final UUID activityId,
+                final long transportRequestId,
+                final ByteBuf payload) {
+
+            final Response response = recycler.get();
+
+            response.setRefCnt(1);
+            response.template = template;
+            response.activityId = activityId;
+            response.transportRequestId = transportRequestId;
+            response.payload = payload;
+
+            return response;
+        }
+
+        @Override
+        public void encode(final ByteBuf out) {
+
+            final ByteBuf encoded = this.template.encoded;
+            final int start = out.writerIndex();
+
+            out.writeBytes(encoded, encoded.readerIndex(), encoded.readableBytes());
+            RntbdUUID.encode(this.activityId, out, start + ACTIVITY_ID_OFFSET);
+            out.setIntLE(start + this.template.transportRequestIdOffset, (int) this.transportRequestId);
+
+            if (this.template.payloadPresent) {
+                out.writeIntLE(this.payload.readableBytes());
+            }
+        }
+
+        @Override
+        public int getMessageLength() {
+            final int length = this.template.encoded.readableBytes();
+            return this.template.payloadPresent ? length + Integer.BYTES : length;
+        }
+
+        @Override
+        public ByteBuf getPayload() {
+            return this.payload;
+        }
+
+        @Override
+        protected void deallocate() {
+            this.payload.release();
+            this.template = null;
+            this.activityId = null;
+            this.payload = null;
+            this.handle.recycle(this);
+        }
+
+        @Override
+        public Response touch(final Object hint) {
+            return this;
+        }
+    }
+
+    // endregion
+}
@@ -32,6 +32,7 @@ public class RntbdToken {
     }
 
     private final RntbdConstants.RntbdHeader header;
+    private final RntbdTokenStream<?> stream;
     private int length;
     private Object value;
 
@@ -39,9 +40,10 @@ public class RntbdToken {
 
     // region Constructors
 
-    private RntbdToken(final RntbdConstants.RntbdHeader header) {
+    private RntbdToken(final RntbdConstants.RntbdHeader header, final RntbdTokenStream<?> stream) {
         checkNotNull(header, "header");
         this.header = header;
+        this.stream = stream;
         this.value = null;
         this.length = Integer.MIN_VALUE;
     }
@@ -94,11 +96,19 @@ public class RntbdToken {
         return cls.cast(this.getValue());
     }
 
+    /**
+     * Sets the value of this token and, if it belongs to a {@link RntbdTokenStream stream}, adjusts the encoded
+     * length of the stream by the difference, so the stream never has to walk its tokens to compute it.
+     */
     @JsonProperty
     public void setValue(final Object value) {
         this.ensureValid(value);
+        final int previousLength = this.computeLength();
         this.value = value;
         this.length = Integer.MIN_VALUE;
+        if (this.stream != null) {
+            this.stream.adjustLength(this.computeLength() - previousLength);
+        }
     }
 
     @JsonIgnore
@@ -140,7 +150,11 @@ public class RntbdToken {
     }
 
     public static RntbdToken create(final RntbdConstants.RntbdHeader header) {
-        return new RntbdToken(header);
+        return new RntbdToken(header, null);
+    }
+
+    static RntbdToken create(final RntbdConstants.RntbdHeader header, final RntbdTokenStream<?> stream) {
+        return new RntbdToken(header, stream);
     }
 
     public void decode(final ByteBuf in) {
@@ -149,6 +163,15 @@ public class RntbdToken {
         this.value = this.header.type().codec().readSlice(in);
     }
 
+    /**
+     * Clears the value of this token so that a pooled {@link RntbdTokenStream stream} can reuse it. The stream resets
+     * its own length.
+     */
+    void reset() {
+        this.value = null;
+        this.length = Integer.MIN_VALUE;
+    }
+
     public void encode(final ByteBuf out) {
 
         checkNotNull(out, "out");
@@ -1,38 +1,66 @@
 package rntbd;
 
-import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Maps;
 import io.netty.buffer.ByteBuf;
 import io.netty.handler.codec.CorruptedFrameException;
 import io.netty.util.ReferenceCounted;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.stream.Collector;
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Strings.lenientFormat;
 
+/**
+ * A stream of {@link RntbdToken tokens}.
+ * <p>
+ * Decoding only records where the value of each known header starts in {@link #in}; the corresponding
+ * {@link RntbdToken} is created and its value sliced on the first call to {@link #get}. A request whose processing
+ * looks at a handful of headers therefore allocates a handful of tokens, not one per header.
+ */
 @SuppressWarnings("UnstableApiUsage")
 abstract class RntbdTokenStream<T extends Enum<T> & RntbdConstants.RntbdHeader> implements ReferenceCounted {
     private final static Logger logger = LoggerFactory.getLogger(RntbdTokenStream.class);
+    private final static boolean strictRequiredHeaders = Configs.isStrictRequiredHeaders();
 
     final ByteBuf in;
-    final ImmutableMap<Short, T> headers;
-    final ImmutableMap<T, RntbdToken> tokens;
+    final T[] headers;
 
-    RntbdTokenStream(final ImmutableSet<T> headers, final ImmutableMap<Short, T> ids, final ByteBuf in) {
+    private final ImmutableList<T> list;
+    private final long[] requiredBits;
+    private final long requiredMask;
+
+    // Indexed by header ordinal: tokens materialized so far and, for decoded streams, the reader index of each
+    // token value in the input (0 if absent; a value always follows its 3-byte id and type prefix)
+    private final RntbdToken[] tokens;
+    private final int[] offsets;
+
+    // Encoded length of all present tokens, maintained as tokens are decoded or set
+    private int length;
+
+    RntbdTokenStream(
+            final ImmutableSet<T> headers,
+            final T[] ids,
+            final long[] requiredBits,
+            final long requiredMask,
+            final ByteBuf in) {
 
         checkNotNull(headers, "expected non-null headers");
         checkNotNull(ids, "expected non-null ids");
+        checkNotNull(requiredBits, "expected non-null requiredBits");
         checkNotNull(in, "expected non-null in");
 
-        final Collector<T, ?, ImmutableMap<T, RntbdToken>> collector = Maps.toImmutableEnumMap(h -> h, RntbdToken::create);
-        this.tokens = headers.stream().collect(collector);
+        this.list = headers.asList();
+        this.tokens = new RntbdToken[this.list.size()];
+        this.offsets = new int[this.list.size()];
         this.headers = ids;
+        this.requiredBits = requiredBits;
+        this.requiredMask = requiredMask;
         this.in = in;
     }
 
@@ -42,8 +70,9 @@ abstract class RntbdTokenStream<T extends Enum<T> & RntbdConstants.RntbdHeader>
 
         int count = 0;
 
-        for (final RntbdToken token : this.tokens.values()) {
-            if (token.isPresent()) {
+        for (final T header : this.list) {
+            final RntbdToken token = this.peek(header);
+            if (token != null && token.isPresent()) {
                 ++count;
             }
         }
@@ -52,58 +81,78 @@ abstract class RntbdTokenStream<T extends Enum<T> & RntbdConstants.RntbdHeader>
     }
 
     final int computeLength() {
+        return this.length;
+    }
 
-        int total = 0;
-
-        for (final RntbdToken token : this.tokens.values()) {
-            total += token.computeLength();
-        }
-
-        return total;
+    final void adjustLength(final int delta) {
+        this.length += delta;
     }
 
     static <T extends RntbdTokenStream<?>> T decode(final T stream) {
+        ((RntbdTokenStream<?>) stream).decodeOffsets();
+        return stream;
+    }
 
-        final ByteBuf in = stream.in;
-
-        while (in.readableBytes() > 0) {
-
-            int startPosition = in.readerIndex();
-            final short id = in.readShortLE();
-            final RntbdTokenType type = RntbdTokenType.fromId(in.readByte());
-
-            RntbdToken token = stream.tokens.get(stream.headers.get(id));
-
-            if (token == null) {
-                token = RntbdToken.create(new UndefinedHeader(id, type));
+    final void encode(final ByteBuf out) {
+        for (final T header : this.list) {
+            final RntbdToken token = this.peek(header);
+            if (token != null) {
+                token.encode(out);
+            } else if (header.isRequired()) {
+                final String message = lenientFormat("Missing value for required header: %s", header);
+                throw new IllegalStateException(message);
             }
+        }
+    }
 
-            token.decode(in);
+    final RntbdToken get(final T header) {
 
-            int endPosition = in.readerIndex();
-            if (startPosition != endPosition) {
-                logger.info("[msg-id: {}] decode({}, {}): token: {}", in.memoryAddress(), startPosition, endPosition, token);
+        final int index = header.ordinal();
+        RntbdToken token = this.tokens[index];
+
+        if (token == null) {
+            token = RntbdToken.create(header, this);
+            final int offset = this.offsets[index];
+            if (offset != 0) {
+                final int readerIndex = this.in.readerIndex();
+                this.in.readerIndex(offset);
+                token.decode(this.in);
+                this.in.readerIndex(readerIndex);
             }
+            this.tokens[index] = token;
         }
 
-        for (final RntbdToken token : stream.tokens.values()) {
-            if (!token.isPresent() && token.isRequired()) {
-                logger.error("[msg-id: {}] Required header not found on token stream: {}", in.memoryAddress(), token);
-                // throw new CorruptedFrameException(message);
+        return token;
+    }
+
+    /**
+     * Clears every token of a stream built for encoding so that it can be reused. Token objects are kept.
+     */
+    final void reset() {
+
+        checkState(this.in.capacity() == 0, "expected a stream built for encoding");
+
+        for (final RntbdToken token : this.tokens) {
+            if (token != null) {
+                token.reset();
             }
         }
 
-        return stream;
+        this.length = 0;
     }
 
-    final void encode(final ByteBuf out) {
-        for (final RntbdToken token : this.tokens.values()) {
-            token.encode(out);
-        }
+    /**
+     * Returns the reader index of the value of {@code header} in {@link #in}, or {@code 0} if the header was not
+     * decoded.
+     */
+    final int offset(final T header) {
+        return this.offsets[header.ordinal()];
     }
 
-    final RntbdToken get(final T header) {
-        return this.tokens.get(header);
+    final boolean isPresent(final T header) {
+        final int index = header.ordinal();
+        final RntbdToken token = this.tokens[index];
+        return token != null ? token.isPresent() : this.offsets[index] != 0;
     }
 
     @Override
@@ -144,37 +193,84 @@ abstract class RntbdTokenStream<T extends Enum<T> & RntbdConstants.RntbdHeader>
 
     // endregion
 
-    // region Types
+    // region Privates
+
+    private void decodeOffsets() {
+
+        final ByteBuf in = this.in;
+        long present = 0L;
+
+        while (in.readableBytes() > 0) {
+
+            final int start = in.readerIndex();
+            final int id = in.readUnsignedShortLE();
+            final RntbdTokenType type = RntbdTokenType.fromId(in.readByte());
+            final T header = id < this.headers.length ? this.headers[id] : null;
 
-    private static final class UndefinedHeader implements RntbdConstants.RntbdHeader {
+            if (header == null) {
+                type.codec().skip(in);  // undefined header
+                continue;
+            }
+
+            final int index = header.ordinal();
 
-        private final short id;
-        private final RntbdTokenType type;
+            if (this.offsets[index] != 0) {
+                this.length -= this.encodedLength(this.offsets[index], header);  // a repeated header: the last one wins
+            }
 
-        UndefinedHeader(final short id, final RntbdTokenType type) {
-            this.id = id;
-            this.type = type;
+            this.offsets[index] = in.readerIndex();
+            present |= this.requiredBits[index];
+            header.type().codec().skip(in);
+            this.length += in.readerIndex() - start;
         }
 
-        @Override
-        public boolean isRequired() {
-            return false;
+        if (present != this.requiredMask) {
+            this.onMissingRequiredHeaders(present);
         }
+    }
+
+    /**
+     * Returns the encoded length of the token of {@code header} whose value starts at {@code offset} in {@link #in}.
+     */
+    private int encodedLength(final int offset, final T header) {
+
+        final ByteBuf in = this.in;
+        final int readerIndex = in.readerIndex();
 
-        @Override
-        public short id() {
-            return this.id;
+        try {
+            in.readerIndex(offset);
+            header.type().codec().skip(in);
+            return Short.BYTES + Byte.BYTES + in.readerIndex() - offset;  // id, type and value
+        } finally {
+            in.readerIndex(readerIndex);
         }
+    }
+
+    private void onMissingRequiredHeaders(final long present) {
+
+        final List<T> missing = new ArrayList<>();
 
-        @Override
-        public String name() {
-            return "Undefined";
+        for (final T header : this.list) {
+            if ((this.requiredBits[header.ordinal()] & ~present) != 0) {
+                missing.add(header);
+            }
         }
 
-        @Override
-        public RntbdTokenType type() {
-            return this.type;
+        final String message = lenientFormat("Required headers not found on token stream: %s", missing);
+
+        if (strictRequiredHeaders) {
+            throw new CorruptedFrameException(message);
         }
+
+        logger.error("[msg-id: {}] {}", this.in.memoryAddress(), message);
+    }
+
+    /**
+     * Returns the token for {@code header} if it was set or decoded, without creating an empty one.
+     */
+    private RntbdToken peek(final T header) {
+        final int index = header.ordinal();
+        return this.tokens[index] != null || this.offsets[index] != 0 ? this.get(header) : null;
     }
 
     // endregion
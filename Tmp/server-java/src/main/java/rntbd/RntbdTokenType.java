@@ -74,11 +74,7 @@ enum RntbdTokenType {
     }
 
     public static RntbdTokenType fromId(final byte value) {
-        if (value == Invalid.id) {
-            return Invalid;
-        }
-
-        return allTokens[value];
+        return allTokens[value & 0xFF];
     }
 
     public byte id() {
@@ -103,6 +99,8 @@ enum RntbdTokenType {
 
         ByteBuf readSlice(ByteBuf in);
 
+        void skip(ByteBuf in);
+
         Class<?> valueType();
 
         void write(Object value, ByteBuf out);
@@ -166,6 +164,11 @@ enum RntbdTokenType {
             return in.readSlice(java.lang.Byte.BYTES);
         }
 
+        @Override
+        public final void skip(final ByteBuf in) {
+            in.skipBytes(java.lang.Byte.BYTES);
+        }
+
         @Override
         public final Class<?> valueType() {
             return java.lang.Byte.class;
@@ -212,7 +215,9 @@ enum RntbdTokenType {
         public Object read(final ByteBuf in) {
             final int length = in.readUnsignedShortLE();
             Codec.checkReadableBytes(in, length, 0xFFFF);
-            return in.readBytes(length);
+            final byte[] bytes = new byte[length];
+            in.readBytes(bytes);
+            return bytes;
         }
 
         @Override
@@ -221,6 +226,11 @@ enum RntbdTokenType {
             return in.readSlice(Short.BYTES + length);
         }
 
+        @Override
+        public void skip(final ByteBuf in) {
+            in.skipBytes(Short.BYTES + in.getUnsignedShortLE(in.readerIndex()));
+        }
+
         @Override
         public Class<?> valueType() {
             return Byte[].class;
@@ -282,6 +292,11 @@ enum RntbdTokenType {
             return in.readSlice(java.lang.Double.BYTES);
         }
 
+        @Override
+        public final void skip(final ByteBuf in) {
+            in.skipBytes(java.lang.Double.BYTES);
+        }
+
         @Override
         public Class<?> valueType() {
             return Double.class;
@@ -333,6 +348,11 @@ enum RntbdTokenType {
             return in.readSlice(java.lang.Float.BYTES);
         }
 
+        @Override
+        public final void skip(final ByteBuf in) {
+            in.skipBytes(java.lang.Float.BYTES);
+        }
+
         @Override
         public Class<?> valueType() {
             return Float.class;
@@ -384,6 +404,11 @@ enum RntbdTokenType {
             return in.readSlice(2 * java.lang.Long.BYTES);
         }
 
+        @Override
+        public final void skip(final ByteBuf in) {
+            in.skipBytes(2 * java.lang.Long.BYTES);
+        }
+
         @Override
         public Class<?> valueType() {
             return UUID.class;
@@ -435,6 +460,11 @@ enum RntbdTokenType {
             return in.readSlice(Integer.BYTES);
         }
 
+        @Override
+        public final void skip(final ByteBuf in) {
+            in.skipBytes(Integer.BYTES);
+        }
+
         @Override
         public Class<?> valueType() {
             return Integer.class;
@@ -486,6 +516,11 @@ enum RntbdTokenType {
             return in.readSlice(java.lang.Long.BYTES);
         }
 
+        @Override
+        public final void skip(final ByteBuf in) {
+            in.skipBytes(java.lang.Long.BYTES);
+        }
+
         @Override
         public Class<?> valueType() {
             return Long.class;
@@ -520,7 +555,9 @@ enum RntbdTokenType {
         public final Object read(final ByteBuf in) {
             final long length = in.readUnsignedIntLE();
             Codec.checkReadableBytes(in, length, Integer.MAX_VALUE);
-            return in.readBytes((int)length);
+            final byte[] bytes = new byte[(int)length];
+            in.readBytes(bytes);
+            return bytes;
         }
 
         @Override
@@ -530,6 +567,13 @@ enum RntbdTokenType {
             return in.readSlice(Integer.BYTES + (int)length);
         }
 
+        @Override
+        public final void skip(final ByteBuf in) {
+            final long length = in.getUnsignedIntLE(in.readerIndex());
+            checkState(length <= Integer.MAX_VALUE);
+            in.skipBytes(Integer.BYTES + (int)length);
+        }
+
         @Override
         public final void write(final Object value, final ByteBuf out) {
 
@@ -560,6 +604,13 @@ enum RntbdTokenType {
             return in.readCharSequence((int)length, StandardCharsets.UTF_8).toString();
         }
 
+        @Override
+        public final void skip(final ByteBuf in) {
+            final long length = in.getUnsignedIntLE(in.readerIndex());
+            checkState(length <= Integer.MAX_VALUE);
+            in.skipBytes(Integer.BYTES + (int)length);
+        }
+
         @Override
         public final void write(final Object value, final ByteBuf out) {
             final int length = this.computeLength(value, Integer.MAX_VALUE);
@@ -602,6 +653,10 @@ enum RntbdTokenType {
             return null;
         }
 
+        @Override
+        public final void skip(final ByteBuf in) {
+        }
+
         @Override
         public Class<?> valueType() {
             return null;
@@ -646,6 +701,11 @@ enum RntbdTokenType {
             return in.readSlice(java.lang.Byte.BYTES + in.getUnsignedByte(in.readerIndex()));
         }
 
+        @Override
+        public final void skip(final ByteBuf in) {
+            in.skipBytes(java.lang.Byte.BYTES + in.getUnsignedByte(in.readerIndex()));
+        }
+
         @Override
         public final void write(final Object value, final ByteBuf out) {
 
@@ -687,6 +747,11 @@ enum RntbdTokenType {
             return in.readSlice(java.lang.Byte.BYTES + in.getUnsignedByte(in.readerIndex()));
         }
 
+        @Override
+        public final void skip(final ByteBuf in) {
+            in.skipBytes(java.lang.Byte.BYTES + in.getUnsignedByte(in.readerIndex()));
+        }
+
         @Override
         public final void write(final Object value, final ByteBuf out) {
 
@@ -767,6 +832,11 @@ enum RntbdTokenType {
             return in.readSlice(Short.BYTES + in.getUnsignedShortLE(in.readerIndex()));
         }
 
+        @Override
+        public void skip(final ByteBuf in) {
+            in.skipBytes(Short.BYTES + in.getUnsignedShortLE(in.readerIndex()));
+        }
+
         @Override
         public Class<?> valueType() {
             return String.class;
@@ -785,7 +855,8 @@ enum RntbdTokenType {
             final int start = out.writerIndex();
 
             if (value instanceof String) {
-                out.writeCharSequence((String)value, StandardCharsets.UTF_8);
+                // Reserves exactly length bytes where writeCharSequence would reserve the UTF-8 worst case
+                ByteBufUtil.reserveAndWriteUtf8(out, (String)value, length);
             } else {
                 out.writeBytes((byte[])value);
             }
@@ -833,6 +904,11 @@ enum RntbdTokenType {
             return in.readSlice(Integer.BYTES);
         }
 
+        @Override
+        public final void skip(final ByteBuf in) {
+            in.skipBytes(Integer.BYTES);
+        }
+
         @Override
         public Class<?> valueType() {
             return Long.class;
@@ -884,6 +960,11 @@ enum RntbdTokenType {
             return in.readSlice(Short.BYTES);
         }
 
+        @Override
+        public final void skip(final ByteBuf in) {
+            in.skipBytes(Short.BYTES);
+        }
+
         @Override
         public Class<?> valueType() {
             return Integer.class;
@@ -0,0 +1,182 @@
+package rntbd;
+
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import static com.google.common.base.Strings.lenientFormat;
+
+/**
+ * Sampled binary trace of RNTBD requests, replacing per-request logging on the hot path.
+ * <p>
+ * Each event loop thread writes fixed-size records of {@code long}s into its own ring buffer: no lock, no boxing and no
+ * allocation per event. A request is sampled when its {@code TransportRequestID} is a multiple of
+ * {@link Configs#getTraceSampleRate()}, so all events of a sampled request are recorded. {@link #dump()} renders the
+ * rings as text for the {@code /rntbd/trace} endpoint of the HTTP/1.1 listener.
+ */
+public final class RntbdTrace {
+
+    // region Fields
+
+    private static final int sampleRate = Math.max(0, Configs.getTraceSampleRate());
+    private static final int capacity = Integer.highestOneBit(Math.max(1, Configs.getTraceBufferSize()));
+
+    // Record layout, in longs
+    private static final int TIME = 0;
+    private static final int EVENT = 1;  // event << 48 | resource type << 32 | operation type << 16
+    private static final int CONNECTION = 2;  // channel id, as logged in [cid: 0x...]
+    private static final int ACTIVITY_ID_MSB = 3;
+    private static final int ACTIVITY_ID_LSB = 4;
+    private static final int TRANSPORT_REQUEST_ID = 5;
+    private static final int RECORD_LENGTH = 6;
+
+    private static final AtomicLongFieldUpdater<RntbdTrace> POSITION =
+            AtomicLongFieldUpdater.newUpdater(RntbdTrace.class, "position");
+
+    private static final List<RntbdTrace> traces = new CopyOnWriteArrayList<>();
+
+    private static final FastThreadLocal<RntbdTrace> current = new FastThreadLocal<RntbdTrace>() {
+        @Override
+        protected RntbdTrace initialValue() {
+            final RntbdTrace trace = new RntbdTrace(Thread.currentThread().getName());
+            traces.add(trace);
+            return trace;
+        }
+    };
+
+    private final String thread;
+    private final long[] records;
+
+    // Number of records written; published with lazySet for dump()
+    private volatile long position;
+
+    // endregion
+
+    private RntbdTrace(final String thread) {
+        this.thread = thread;
+        this.records = new long[capacity * RECORD_LENGTH];
+    }
+
+    // region Methods
+
+    public static boolean isEnabled() {
+        return sampleRate > 0;
+    }
+
+    /**
+     * Records a new connection.
+     */
+    public static void connected(final Channel channel) {
+        if (sampleRate > 0) {
+            current.get().record(Event.CONNECTED, channel, 0, 0, null, 0L);
+        }
+    }
+
+    /**
+     * Records a request that was decoded and, before it is answered, the response to it.
+     */
+    static void request(final Event event, final Channel channel, final RntbdRequest request) {
+        if (sampleRate > 0 && request.transportRequestId % sampleRate == 0) {
+            current.get().record(
+                    event,
+                    channel,
+                    request.resourceTypeInt,
+                    request.operationTypeInt,
+                    request.activityId,
+                    request.transportRequestId);
+        }
+    }
+
+    /**
+     * Renders the records of all event loops, oldest first per event loop.
+     * <p>
+     * Rings are read while they are written, so a record overwritten during the dump may come out torn.
+     */
+    public static String dump() {
+
+        final StringBuilder builder = new StringBuilder();
+
+        builder.append(lenientFormat("# sample rate: 1/%s, ring capacity: %s records\n", sampleRate, capacity));
+        builder.append("# thread time-ns event cid resource-type operation-type activity-id transport-request-id\n");
+
+        for (final RntbdTrace trace : traces) {
+            trace.dump(builder);
+        }
+
+        return builder.toString();
+    }
+
+    private void record(
+            final Event event,
+            final Channel channel,
+            final int resourceType,
+            final int operationType,
+            final UUID activityId,
+            final long transportRequestId) {
+
+        final long position = this.position;
+        final int index = (int) (position & (capacity - 1)) * RECORD_LENGTH;
+        final long[] records = this.records;
+
+        records[index + TIME] = System.nanoTime();
+        records[index + EVENT] = (long) event.ordinal() << 48 | (long) resourceType << 32 | (long) operationType << 16;
+        records[index + CONNECTION] = connectionId(channel);
+        records[index + ACTIVITY_ID_MSB] = activityId == null ? 0L : activityId.getMostSignificantBits();
+        records[index + ACTIVITY_ID_LSB] = activityId == null ? 0L : activityId.getLeastSignificantBits();
+        records[index + TRANSPORT_REQUEST_ID] = transportRequestId;
+
+        POSITION.lazySet(this, position + 1);
+    }
+
+    /**
+     * Returns the short text of the channel id, which is what connection logs print, as a number; ids without a hex
+     * short text fall back to a hash of it.
+     */
+    private static long connectionId(final Channel channel) {
+
+        final String text = channel.id().asShortText();
+
+        try {
+            return Long.parseUnsignedLong(text, 16);
+        } catch (final NumberFormatException error) {
+            return text.hashCode();
+        }
+    }
+
+    private void dump(final StringBuilder builder) {
+
+        final long end = this.position;
+        final Event[] events = Event.values();
+
+        for (long position = Math.max(0L, end - capacity); position < end; position++) {
+
+            final int index = (int) (position & (capacity - 1)) * RECORD_LENGTH;
+            final long event = this.records[index + EVENT];
+
+            builder.append(this.thread).append(' ')
+                    .append(this.records[index + TIME]).append(' ')
+                    .append(events[(int) (event >>> 48) % events.length]).append(' ')
+                    .append(String.format("%08x", (int) this.records[index + CONNECTION])).append(' ')
+                    .append((event >>> 32) & 0xFFFF).append(' ')
+                    .append((event >>> 16) & 0xFFFF).append(' ')
+                    .append(new UUID(this.records[index + ACTIVITY_ID_MSB], this.records[index + ACTIVITY_ID_LSB])).append(' ')
+                    .append(this.records[index + TRANSPORT_REQUEST_ID]).append('\n');
+        }
+    }
+
+    // endregion
+
+    // region Types
+
+    public enum Event {
+        CONNECTED,
+        DECODED,
+        RESPONDED
+    }
+
+    // endregion
+}
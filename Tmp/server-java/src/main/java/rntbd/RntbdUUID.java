@@ -58,6 +58,35 @@ public final class RntbdUUID {
         return new UUID(mostSignificantBits, leastSignificantBits);
     }
 
+    /**
+     * Decode a {@link UUID} as serialized by Microsoft APIs like {@code System.Guid.ToByteArray} without modifying the
+     * {@code readerIndex} of the buffer
+     *
+     * @param in a {@link ByteBuf} containing the serialized {@link UUID} to be decoded
+     * @param index the absolute index of the serialized {@link UUID} in {@code in}
+     * @return a new {@link UUID}
+     */
+    public static UUID decode(final ByteBuf in, final int index) {
+
+        checkNotNull(in, "in");
+
+        if (in.writerIndex() - index < 2 * Long.BYTES) {
+            final String reason = Strings.lenientFormat("invalid frame length: %s", in.writerIndex() - index);
+            throw new CorruptedFrameException(reason);
+        }
+
+        long mostSignificantBits = in.getUnsignedIntLE(index) << 32;
+
+        mostSignificantBits |= (0x000000000000FFFFL & in.getShortLE(index + 4)) << 16;
+        mostSignificantBits |= (0x000000000000FFFFL & in.getShortLE(index + 6));
+
+        long leastSignificantBits = (0x000000000000FFFFL & in.getShortLE(index + 8)) << (32 + 16);
+        leastSignificantBits |= (long) in.getUnsignedShort(index + 10) << 32;
+        leastSignificantBits |= in.getUnsignedInt(index + 12);
+
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+
     /**
      * Encodes a {@link UUID} as serialized by Microsoft APIs like {@code System.Guid.ToByteArray}
      *
@@ -90,4 +119,27 @@ public final class RntbdUUID {
         out.writeShort((short)((leastSignificantBits & 0x0000FFFF00000000L) >>> 32));
         out.writeInt((int)(leastSignificantBits & 0x00000000FFFFFFFFL));
     }
+
+    /**
+     * Encodes a {@link UUID} as serialized by Microsoft APIs like {@code System.Guid.ToByteArray} at the given
+     * absolute index, without modifying the {@code writerIndex} of the buffer
+     *
+     * @param uuid  a {@link UUID} to be encoded
+     * @param out   an output {@link ByteBuf}
+     * @param index the absolute index at which the {@link UUID} is written
+     */
+    public static void encode(final UUID uuid, final ByteBuf out, final int index) {
+
+        final long mostSignificantBits = uuid.getMostSignificantBits();
+
+        out.setIntLE(index, (int)((mostSignificantBits & 0xFFFFFFFF00000000L) >>> 32));
+        out.setShortLE(index + 4, (short)((mostSignificantBits & 0x00000000FFFF0000L) >>> 16));
+        out.setShortLE(index + 6, (short)(mostSignificantBits & 0x000000000000FFFFL));
+
+        final long leastSignificantBits = uuid.getLeastSignificantBits();
+
+        out.setShortLE(index + 8, (short)((leastSignificantBits & 0xFFFF000000000000L) >>> (32 + 16)));
+        out.setShort(index + 10, (short)((leastSignificantBits & 0x0000FFFF00000000L) >>> 32));
+        out.setInt(index + 12, (int)(leastSignificantBits & 0x00000000FFFFFFFFL));
+    }
 }
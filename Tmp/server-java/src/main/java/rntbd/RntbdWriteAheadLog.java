@@ -0,0 +1,303 @@
+package rntbd;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of document writes, with group commit.
+ * <p>
+ * Event loops {@link #append} entries without blocking. One log thread drains all entries queued meanwhile, writes
+ * them with one gathering write and, depending on the {@link Fsync} policy, forces them to disk with one
+ * {@link FileChannel#force} for the whole batch. Each entry is then told that it is committed. Writes from all
+ * connections and partitions share the batch, so a busy server pays for one fsync per commit window rather than one
+ * per write.
+ * <p>
+ * Records have the form:
+ * <pre>{@code
+ * [int length][int partition][long lsn][short operation type][int key length][key][int body length][body][int crc32]
+ * }</pre>
+ * The log is truncated on start and has no recovery: the document store is not persistent either. It exists to give
+ * writes the latency and throughput of a durable replica.
+ */
+public final class RntbdWriteAheadLog implements AutoCloseable {
+
+    // region Fields
+
+    private static final Logger logger = LoggerFactory.getLogger(RntbdWriteAheadLog.class);
+
+    private static final int MAX_BATCH = 1024;
+
+    private final FileChannel channel;
+    private final Fsync fsync;
+    private final long groupCommitNanos;
+    private final Path file;
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Thread thread;
+
+    private volatile boolean closed;
+
+    // endregion
+
+    /**
+     * Creates an empty log and starts its thread.
+     *
+     * @param directory the directory of the log file.
+     * @param fsync when to force written records to disk.
+     * @param groupCommitMicros how long to wait for more writes after the first one of a batch; {@code 0} commits
+     * whatever was queued while the previous batch was being written.
+     */
+    public RntbdWriteAheadLog(final Path directory, final Fsync fsync, final int groupCommitMicros) throws IOException {
+
+        Files.createDirectories(directory);
+
+        this.file = directory.resolve("rntbd.wal");
+        this.channel = FileChannel.open(this.file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        this.fsync = fsync;
+        this.groupCommitNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, groupCommitMicros));
+        this.thread = new DefaultThreadFactory("rntbd-wal", true).newThread(this::run);
+        this.thread.start();
+
+        logger.warn("Write-ahead log {} fsync: {} group commit: {}us", this.file, fsync, groupCommitMicros);
+    }
+
+    // region Methods
+
+    /**
+     * Queues {@code entry} for the next batch. Called from any thread; never blocks.
+     */
+    public void append(final Entry entry) {
+
+        if (this.closed) {
+            entry.committed(new IOException("write-ahead log closed"));
+            return;
+        }
+
+        this.queue.offer(entry);
+
+        if (this.pending.incrementAndGet() == 1) {
+            LockSupport.unpark(this.thread);
+        }
+
+        // The log may have closed since the check above, and its thread exited without seeing the entry: whichever
+        // of this thread and the log thread takes the entry off the queue answers it
+        if (this.closed && this.queue.remove(entry)) {
+            this.pending.decrementAndGet();
+            entry.committed(new IOException("write-ahead log closed"));
+        }
+    }
+
+    /**
+     * Stops the log thread once queued entries are committed, and closes the log file.
+     * <p>
+     * Entries appended meanwhile fail. If the calling thread is interrupted, it stops waiting for the log thread and
+     * its interrupt status is set.
+     */
+    @Override
+    public void close() {
+
+        this.closed = true;
+        LockSupport.unpark(this.thread);
+
+        try {
+            this.thread.join();
+        } catch (final InterruptedException error) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Encodes a record of the log.
+     *
+     * @param partition the id of the partition written.
+     * @param lsn the LSN of the write.
+     * @param operationType the RNTBD operation type id of the write.
+     * @param key the document key.
+     * @param body the document body, or {@code null} for a delete.
+     */
+    public static ByteBuffer newRecord(
+            final int partition,
+            final long lsn,
+            final int operationType,
+            final String key,
+            final byte[] body) {
+
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final int bodyLength = body == null ? 0 : body.length;
+        final int length = 3 * Integer.BYTES + Long.BYTES + Short.BYTES + Integer.BYTES + keyBytes.length
+                + Integer.BYTES + bodyLength + Integer.BYTES;
+
+        final ByteBuffer record = ByteBuffer.allocate(length)
+                .putInt(length)
+                .putInt(partition)
+                .putLong(lsn)
+                .putShort((short) operationType)
+                .putInt(keyBytes.length)
+                .put(keyBytes)
+                .putInt(bodyLength);
+
+        if (body != null) {
+            record.put(body);
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        return record;
+    }
+
+    private void run() {
+
+        final List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        final ByteBuffer[] records = new ByteBuffer[MAX_BATCH];
+
+        while (true) {
+
+            if (this.pending.get() == 0) {
+                if (this.closed) {
+                    break;
+                }
+                LockSupport.park(this);
+                continue;
+            }
+
+            if (this.groupCommitNanos > 0) {
+                LockSupport.parkNanos(this, this.groupCommitNanos);
+            }
+
+            Entry entry;
+
+            while (batch.size() < MAX_BATCH && (entry = this.queue.poll()) != null) {
+                records[batch.size()] = entry.record();
+                batch.add(entry);
+            }
+
+            IOException error = null;
+
+            try {
+                this.write(records, batch.size());
+            } catch (final IOException e) {
+                logger.error("Write-ahead log {} failed: {}", this.file, e.toString());
+                error = e;
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).committed(error);
+                records[i] = null;
+            }
+
+            this.pending.addAndGet(-batch.size());
+            batch.clear();
+        }
+
+        for (Entry entry = this.queue.poll(); entry != null; entry = this.queue.poll()) {
+            entry.committed(new IOException("write-ahead log closed"));
+        }
+
+        try {
+            this.channel.close();
+        } catch (final IOException error) {
+            logger.warn("Failed to close write-ahead log {}: {}", this.file, error.toString());
+        }
+    }
+
+    private void write(final ByteBuffer[] records, final int count) throws IOException {
+
+        if (this.fsync == Fsync.WRITE) {
+            for (int i = 0; i < count; i++) {
+                while (records[i].hasRemaining()) {
+                    this.channel.write(records[i]);
+                }
+                this.channel.force(false);
+            }
+            return;
+        }
+
+        long remaining = 0L;
+
+        for (int i = 0; i < count; i++) {
+            remaining += records[i].remaining();
+        }
+
+        while (remaining > 0) {
+            remaining -= this.channel.write(records, 0, count);
+        }
+
+        if (this.fsync == Fsync.BATCH) {
+            this.channel.force(false);
+        }
+    }
+
+    // endregion
+
+    // region Types
+
+    /**
+     * When written records are forced to disk.
+     */
+    public enum Fsync {
+
+        /**
+         * Never: records reach the page cache only.
+         */
+        NONE,
+
+        /**
+         * Once per batch: group commit.
+         */
+        BATCH,
+
+        /**
+         * After each record.
+         */
+        WRITE;
+
+        public static Fsync parse(final String name) {
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * A write waiting to be committed.
+     */
+    public interface Entry {
+
+        /**
+         * Returns the encoded record; see {@link #newRecord}.
+         */
+        ByteBuffer record();
+
+        /**
+         * Called on the log thread once the record is committed, or failed to be. Must not throw: an exception would
+         * stop the log thread and leave later entries unanswered.
+         *
+         * @param error {@code null} on success.
+         */
+        void committed(IOException error);
+    }
+
+    // endregion
+}
@@ -1,10 +1,13 @@
 package rntbd;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import reactor.core.publisher.Mono;
 import reactor.netty.NettyOutbound;
 import reactor.netty.http.server.HttpServerResponse;
 
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 
 public class Utils {
@@ -70,4 +73,24 @@ public class Utils {
             "    }\n" +
             "  ]\n" +
             "}";
+
+    /**
+     * {@link #testJsonPayload} encoded once into a read-only direct buffer shared by all responses.
+     * <p>
+     * Hand out {@link ByteBuf#retainedDuplicate()}s: they share the bytes but not the reader index. The buffer is
+     * unreleasable so that a duplicate released once too often cannot free it.
+     */
+    public static final ByteBuf testJsonPayloadBuffer = newSharedPayload(testJsonPayload);
+
+    /**
+     * A feed holding {@link #testJsonPayload} as its only document, shared like {@link #testJsonPayloadBuffer}.
+     */
+    public static final ByteBuf testJsonFeedPayloadBuffer = newSharedPayload(
+            "{\"_rid\":\"\",\"Documents\":[" + testJsonPayload + "],\"_count\":1}");
+
+    private static ByteBuf newSharedPayload(final String payload) {
+        final byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        final ByteBuf buffer = Unpooled.directBuffer(bytes.length, bytes.length).writeBytes(bytes);
+        return Unpooled.unreleasableBuffer(buffer.asReadOnly());
+    }
 }